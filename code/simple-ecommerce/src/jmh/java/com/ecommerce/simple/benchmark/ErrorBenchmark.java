@@ -0,0 +1,75 @@
+package com.ecommerce.simple.benchmark;
+
+import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.model.Error;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+/**
+ * Cost of the error bodies built by {@code CustomExceptionHandler}, with and without the exception creation, the
+ * domain exceptions being stackless.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorBenchmark {
+
+    private NotFoundException notFoundException;
+    private HttpMessageNotWritableException notWritableException;
+    private List<String> errors;
+
+    @Setup
+    public void setUp() {
+        notFoundException = new NotFoundException("Product of id 100 not found.");
+        notWritableException = new HttpMessageNotWritableException(
+                "No converter for [class com.ecommerce.simple.dto.ProductResponseDTO] with preset Content-Type 'null'");
+        errors = List.of("name is mandatory", "price is mandatory");
+    }
+
+    @Benchmark
+    public Error notFoundError() {
+        return new Error(NOT_FOUND, notFoundException);
+    }
+
+    @Benchmark
+    public Error notFoundErrorWithException() {
+        return new Error(NOT_FOUND, new NotFoundException("Product of id 100 not found."));
+    }
+
+    /**
+     * Baseline of {@link #notFoundErrorWithException()}: the same error from an exception filling in its stack trace.
+     */
+    @Benchmark
+    public Error notFoundErrorWithStackTrace() {
+        return new Error(NOT_FOUND, new IllegalStateException("Product of id 100 not found."));
+    }
+
+    @Benchmark
+    public Error notWritableError() {
+        return new Error(INTERNAL_SERVER_ERROR, notWritableException);
+    }
+
+    @Benchmark
+    public Error constraintViolationError() {
+        return new Error(BAD_REQUEST, errors);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ecommerce.simple.benchmark;
+
+import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.dto.OrderItemResponseDTO;
+import com.ecommerce.simple.dto.OrderResponseDTO;
+import com.ecommerce.simple.dto.ProductRequestDTO;
+import com.ecommerce.simple.dto.ProductResponseDTO;
+import com.ecommerce.simple.mapper.OrderItemMapper;
+import com.ecommerce.simple.mapper.OrderItemMapperImpl;
+import com.ecommerce.simple.mapper.OrderMapper;
+import com.ecommerce.simple.mapper.OrderMapperImpl;
+import com.ecommerce.simple.mapper.ProductMapper;
+import com.ecommerce.simple.mapper.ProductMapperImpl;
+import com.ecommerce.simple.model.Order;
+import com.ecommerce.simple.model.OrderItem;
+import com.ecommerce.simple.model.Product;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.record.RecordModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per object of the reflective ModelMapper the services used to hold against the generated MapStruct mappers.
+ * Run with {@code -prof gc} to compare the allocation rate as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    private ModelMapper modelMapper;
+    private ProductMapper productMapper;
+    private OrderMapper orderMapper;
+    private OrderItemMapper orderItemMapper;
+
+    private Product product;
+    private ProductRequestDTO productRequestDTO;
+    private Order order;
+    private OrderItem orderItem;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        modelMapper.registerModule(new RecordModule());
+        productMapper = new ProductMapperImpl();
+        orderMapper = new OrderMapperImpl();
+        orderItemMapper = new OrderItemMapperImpl();
+
+        product = Product.builder()
+                .id(1)
+                .name("new tv")
+                .description("high definition television")
+                .quantity(10)
+                .price(500.0)
+                .createdOn(Instant.now())
+                .lastUpdatedOn(Instant.now())
+                .version(0)
+                .build();
+        productRequestDTO = new ProductRequestDTO("new tv", "high definition television", 10, 500.0, null);
+        order = Order.builder()
+                .id(1)
+                .description("first order")
+                .totalAmount(500.0)
+                .createdOn(Instant.now())
+                .lastUpdatedOn(Instant.now())
+                .version(0)
+                .build();
+        orderItem = OrderItem.builder()
+                .id(1)
+                .orderId(1)
+                .productId(1)
+                .quantity(1)
+                .build();
+    }
+
+    @Benchmark
+    public ProductResponseDTO productResponseWithModelMapper() {
+        return modelMapper.map(product, ProductResponseDTO.class);
+    }
+
+    @Benchmark
+    public ProductResponseDTO productResponseWithMapStruct() {
+        return productMapper.toProductResponseDTO(product);
+    }
+
+    @Benchmark
+    public Product productFromRequestWithModelMapper() {
+        return modelMapper.map(productRequestDTO, Product.class);
+    }
+
+    @Benchmark
+    public Product productFromRequestWithMapStruct() {
+        return productMapper.toProduct(productRequestDTO);
+    }
+
+    @Benchmark
+    public OrderResponseDTO orderResponseWithModelMapper() {
+        return modelMapper.map(order, OrderResponseDTO.class);
+    }
+
+    @Benchmark
+    public OrderResponseDTO orderResponseWithMapStruct() {
+        return orderMapper.toOrderResponseDTO(order);
+    }
+
+    @Benchmark
+    public OrderItemRequestDTO orderItemRequestWithModelMapper() {
+        return modelMapper.map(orderItem, OrderItemRequestDTO.class);
+    }
+
+    @Benchmark
+    public OrderItemRequestDTO orderItemRequestWithMapStruct() {
+        return orderItemMapper.toOrderItemRequestDTO(orderItem);
+    }
+
+    @Benchmark
+    public OrderItemResponseDTO orderItemResponseWithMapStruct() {
+        return orderItemMapper.toOrderItemResponseDTO(orderItem, product);
+    }
+}
@@ -0,0 +1,62 @@
+package com.ecommerce.simple.benchmark;
+
+import com.ecommerce.simple.dto.ProductResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Writes product listings the way the message converters do, with mappers configured by Spring's builder,
+ * into a discarding stream so only the serialization is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private ObjectMapper jsonMapper;
+    private XmlMapper xmlMapper;
+    private List<ProductResponseDTO> products;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        xmlMapper = Jackson2ObjectMapperBuilder.xml().build();
+        products = IntStream.rangeClosed(1, size)
+                .mapToObj(id -> new ProductResponseDTO(id, "tv " + id, "high definition television", 10, 500.0, null, 0))
+                .toList();
+    }
+
+    @Benchmark
+    public void productsToJson() throws IOException {
+        jsonMapper.writeValue(OutputStream.nullOutputStream(), products);
+    }
+
+    @Benchmark
+    public void productsToXml() throws IOException {
+        xmlMapper.writeValue(OutputStream.nullOutputStream(), products);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ecommerce.simple.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps every latency of a workload, so the percentiles are exact rather than bucketed.
+ */
+class LatencyRecorder {
+
+    private final long[] latencies;
+    private final AtomicInteger count = new AtomicInteger();
+
+    LatencyRecorder(int capacity) {
+        this.latencies = new long[capacity];
+    }
+
+    void record(long nanos) {
+        latencies[count.getAndIncrement()] = nanos;
+    }
+
+    int count() {
+        return count.get();
+    }
+
+    /**
+     * @return the latencies recorded so far, sorted; call it once the workload is over
+     */
+    long[] sorted() {
+        long[] sorted = Arrays.copyOf(latencies, count.get());
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,234 @@
+package com.ecommerce.simple.loadtest;
+
+import com.ecommerce.simple.SimpleEcommerceApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.lang.String.format;
+
+/**
+ * Checkout load test: starts an embedded PostgreSQL and the application in this JVM, then drives concurrent
+ * {@code POST /api/order-items} against a few hot products, interleaved with product reads.
+ * <p>
+ * Reports the throughput and latency percentiles of each workload and checks the stock left against the order
+ * items written: an oversell is an order item beyond the initial stock, an undersell a checkout refused for lack
+ * of stock while the product still had some. Exits with 1 when any of them, or any unexpected response, happened.
+ */
+public class LoadTest {
+
+    private static final double PRICE = 10.0;
+    private static final String NO_LEFT_OVER = "There is no left over products";
+
+    private final int checkouts = Integer.getInteger("loadtest.checkouts", 5000);
+    private final int reads = Integer.getInteger("loadtest.reads", 5000);
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 64);
+    private final int hotProducts = Integer.getInteger("loadtest.hotProducts", 4);
+    private final int stock = Integer.getInteger("loadtest.stock", 1000);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String baseUrl;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private final LatencyRecorder checkoutLatencies = new LatencyRecorder(checkouts);
+    private final LatencyRecorder readLatencies = new LatencyRecorder(reads);
+    private final AtomicInteger unexpectedResponses = new AtomicInteger();
+    private final AtomicIntegerArray refusedByProduct = new AtomicIntegerArray(hotProducts);
+
+    LoadTest(JdbcTemplate jdbcTemplate, int port) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.baseUrl = "http://localhost:" + port;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // devtools would restart the application, and this main with it, in another class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        boolean passed;
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.start();
+             // command line arguments, the only source that takes precedence over application.yaml
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(SimpleEcommerceApplication.class)
+                     .profiles("loadtest")
+                     .run("--server.port=0",
+                             "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                             "--spring.datasource.username=postgres",
+                             "--spring.datasource.password=postgres")) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            passed = new LoadTest(context.getBean(JdbcTemplate.class), port).run();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run() {
+        List<Integer> productIds = createHotProducts();
+        List<Integer> orderIds = createOrders();
+
+        List<Runnable> requests = new ArrayList<>(checkouts + reads);
+        for (int i = 0; i < checkouts; i++) {
+            int productIndex = i % hotProducts;
+            Integer orderId = orderIds.get(i);
+            requests.add(() -> checkout(orderId, productIds.get(productIndex), productIndex));
+        }
+        for (int i = 0; i < reads; i++) {
+            String path = i % 2 == 0
+                    ? "/api/products/" + productIds.get(i % hotProducts)
+                    : "/api/products?size=20";
+            requests.add(() -> read(path));
+        }
+        // the same interleaving on every run, so two runs are comparable
+        Collections.shuffle(requests, new Random(42));
+
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < concurrency; worker++) {
+                workers.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests.size(); i = next.getAndIncrement()) {
+                        requests.get(i).run();
+                    }
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.printf("%nLoad test: %d checkouts and %d reads by %d concurrent clients, %d hot products of stock %d, %.2f s%n%n",
+                checkouts, reads, concurrency, hotProducts, stock, elapsedSeconds);
+        System.out.printf("%-10s %10s %12s %10s %10s %10s%n", "workload", "requests", "requests/s", "p50 ms", "p99 ms", "p999 ms");
+        report("checkout", checkoutLatencies, elapsedSeconds);
+        report("read", readLatencies, elapsedSeconds);
+
+        return checkStock(productIds) & unexpectedResponses.get() == 0;
+    }
+
+    private void checkout(Integer orderId, Integer productId, int productIndex) {
+        String body = format("{\"orderId\":%d,\"productId\":%d}", orderId, productId);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/order-items"))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        HttpResponse<String> response = send(request, checkoutLatencies);
+        if (response == null || response.statusCode() == 200) {
+            return;
+        }
+        if (response.statusCode() == 400 && response.body().contains(NO_LEFT_OVER)) {
+            refusedByProduct.incrementAndGet(productIndex);
+        } else {
+            unexpected(request, response);
+        }
+    }
+
+    private void read(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        HttpResponse<String> response = send(request, readLatencies);
+        if (response != null && response.statusCode() != 200) {
+            unexpected(request, response);
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request, LatencyRecorder latencies) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            latencies.record(System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            unexpectedResponses.incrementAndGet();
+            System.out.printf("%s %s failed: %s%n", request.method(), request.uri(), e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void unexpected(HttpRequest request, HttpResponse<String> response) {
+        // only the first ones, the count is in the summary
+        if (unexpectedResponses.incrementAndGet() <= 10) {
+            System.out.printf("%s %s answered %d: %s%n", request.method(), request.uri(), response.statusCode(), response.body());
+        }
+    }
+
+    private static void report(String workload, LatencyRecorder latencies, double elapsedSeconds) {
+        long[] sorted = latencies.sorted();
+        System.out.printf("%-10s %10d %12.1f %10.2f %10.2f %10.2f%n",
+                workload,
+                latencies.count(),
+                latencies.count() / elapsedSeconds,
+                LatencyRecorder.percentileMillis(sorted, 50),
+                LatencyRecorder.percentileMillis(sorted, 99),
+                LatencyRecorder.percentileMillis(sorted, 99.9));
+    }
+
+    private boolean checkStock(List<Integer> productIds) {
+        System.out.printf("%n%-10s %10s %10s %10s %10s %10s %10s%n", "product", "stock", "left", "sold", "refused", "oversold", "undersold");
+
+        boolean consistent = true;
+        int totalSold = 0;
+        for (int i = 0; i < productIds.size(); i++) {
+            Integer productId = productIds.get(i);
+            int left = jdbcTemplate.queryForObject("SELECT quantity FROM product WHERE id = ?", Integer.class, productId);
+            int sold = jdbcTemplate.queryForObject("SELECT count(*) FROM order_product WHERE product_id = ?", Integer.class, productId);
+            int refused = refusedByProduct.get(i);
+            int oversold = Math.max(sold - stock, 0);
+            // the stock only goes down during the test: a refusal with stock left at the end had stock left when refused
+            int undersold = left > 0 ? refused : 0;
+            System.out.printf("%-10d %10d %10d %10d %10d %10d %10d%n", productId, stock, left, sold, refused, oversold, undersold);
+
+            if (oversold > 0 || undersold > 0 || stock - left != sold) {
+                consistent = false;
+            }
+            totalSold += sold;
+        }
+
+        Double totalAmount = jdbcTemplate.queryForObject("SELECT coalesce(sum(total_amount), 0) FROM \"order\"", Double.class);
+        boolean totalsMatch = Math.abs(totalAmount - totalSold * PRICE) < 0.001;
+        System.out.printf("%norder totals: %.2f, expected %.2f%nunexpected responses: %d%n%n",
+                totalAmount, totalSold * PRICE, unexpectedResponses.get());
+
+        return consistent && totalsMatch;
+    }
+
+    private List<Integer> createHotProducts() {
+        List<Integer> productIds = new ArrayList<>(hotProducts);
+        for (int i = 0; i < hotProducts; i++) {
+            productIds.add(jdbcTemplate.queryForObject(
+                    "INSERT INTO product (name, description, quantity, price) VALUES (?, ?, ?, ?) RETURNING id",
+                    Integer.class, "load test product " + i, "hot product", stock, PRICE));
+        }
+        return productIds;
+    }
+
+    private List<Integer> createOrders() {
+        // one order per checkout: a product can be added only once to an order
+        return jdbcTemplate.queryForList("""
+                INSERT INTO "order" (description, total_amount)
+                SELECT 'load test order ' || g, 0
+                  FROM generate_series(1, ?) g
+                RETURNING id
+                """, Integer.class, checkouts);
+    }
+}
@@ -0,0 +1,77 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+/**
+ * In-process Caffeine caches, bounded by the {@code spring.cache.caffeine.spec} of the application properties.
+ * Their hit, miss and eviction counts are published by the actuator as the {@code cache.*} metrics.
+ */
+@EnableCaching
+@EnableConfigurationProperties(CacheProperties.class)
+@Configuration
+public class CacheConfiguration {
+
+    public static final String PRODUCTS_CACHE = "products";
+
+    @Bean
+    CacheManager cacheManager(CacheProperties cacheProperties) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(@NonNull String name, @NonNull com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new TransactionAwareCaffeineCache(name, cache, isAllowNullValues());
+            }
+        };
+        String specification = cacheProperties.getCaffeine().getSpec();
+        if (StringUtils.hasText(specification)) {
+            cacheManager.setCacheSpecification(specification);
+        }
+        cacheManager.setCacheNames(cacheProperties.getCacheNames());
+        return cacheManager;
+    }
+
+    /**
+     * Evicts again once the current transaction completes: a concurrent read between the write and its commit
+     * would otherwise put the previous row back in the cache until it expires.
+     */
+    static class TransactionAwareCaffeineCache extends CaffeineCache {
+
+        TransactionAwareCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache, boolean allowNullValues) {
+            super(name, cache, allowNullValues);
+        }
+
+        @Override
+        public void evict(@NonNull Object key) {
+            super.evict(key);
+            afterCompletion(() -> super.evict(key));
+        }
+
+        @Override
+        public boolean evictIfPresent(@NonNull Object key) {
+            afterCompletion(() -> super.evict(key));
+            return super.evictIfPresent(key);
+        }
+
+        private static void afterCompletion(Runnable eviction) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        eviction.run();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Writes run again when they lose a race against a concurrent one.
+ *
+ * @param maxAttempts how many times a write runs before its conflict is reported to the client
+ * @param backoff     the pause before the first retry, doubled at each retry and randomized to spread them
+ * @param maxBackoff  the longest pause between two attempts
+ */
+@ConfigurationProperties("conflict-retry")
+public record ConflictRetryProperties(@DefaultValue("5") int maxAttempts,
+                                      @DefaultValue("5ms") Duration backoff,
+                                      @DefaultValue("100ms") Duration maxBackoff) {
+}
@@ -0,0 +1,36 @@
+package com.ecommerce.simple.configuration;
+
+import com.ecommerce.simple.repository.BulkheadDataSource;
+import com.ecommerce.simple.service.DatabaseBulkhead;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.util.function.SingletonSupplier;
+
+import javax.sql.DataSource;
+
+@EnableConfigurationProperties(DatabaseBulkheadProperties.class)
+@Configuration
+public class DatabaseBulkheadConfiguration {
+
+    /**
+     * Puts the data source behind the {@link DatabaseBulkhead}, static so it applies to the data source however early
+     * it is created.
+     */
+    @Bean
+    static BeanPostProcessor bulkheadDataSourcePostProcessor(ObjectProvider<DatabaseBulkhead> databaseBulkhead) {
+        return new BeanPostProcessor() {
+            @NonNull
+            @Override
+            public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+                    return new BulkheadDataSource(dataSource, SingletonSupplier.of(databaseBulkhead::getObject));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Bounds the connections asked of the pool, so a spike of requests is turned away instead of timing out in it.
+ *
+ * @param reservedConnections how many connections of the pool are kept for the work let past the bulkhead, such as
+ *                            the folds of the order totals, the others are handed out to the requests
+ * @param maxQueued           how many requests wait for a connection, the next ones are rejected right away
+ * @param maxWait             how long a request waits for a connection before it is rejected
+ */
+@ConfigurationProperties("database-bulkhead")
+public record DatabaseBulkheadProperties(@DefaultValue("2") int reservedConnections,
+                                         @DefaultValue("200") int maxQueued,
+                                         @DefaultValue("1s") Duration maxWait) {
+}
@@ -0,0 +1,14 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Expired idempotency keys are purged from the database on a schedule, see {@code idempotency.purge-interval}.
+ */
+@EnableScheduling
+@EnableConfigurationProperties(IdempotencyProperties.class)
+@Configuration
+public class IdempotencyConfiguration {
+}
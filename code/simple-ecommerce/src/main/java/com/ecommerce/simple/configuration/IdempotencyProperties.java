@@ -0,0 +1,17 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Idempotency keys of the create endpoints.
+ *
+ * @param ttl         how long a key replays its first response
+ * @param maximumSize how many keys are also kept in memory, the others are read back from the database
+ */
+@ConfigurationProperties("idempotency")
+public record IdempotencyProperties(@DefaultValue("24h") Duration ttl,
+                                    @DefaultValue("10000") long maximumSize) {
+}
@@ -0,0 +1,17 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Ids found missing, answered 404 without asking the database again.
+ *
+ * @param ttl         how long an id stays known as missing, bounding how late a row created behind the services is seen
+ * @param maximumSize how many missing ids are kept, the least used ones are asked again
+ */
+@ConfigurationProperties("missing-id-cache")
+public record MissingIdCacheProperties(@DefaultValue("1m") Duration ttl,
+                                       @DefaultValue("100000") long maximumSize) {
+}
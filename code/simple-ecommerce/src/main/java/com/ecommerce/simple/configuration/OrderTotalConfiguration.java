@@ -0,0 +1,9 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@EnableConfigurationProperties(OrderTotalProperties.class)
+@Configuration
+public class OrderTotalConfiguration {
+}
@@ -0,0 +1,16 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Updates of the order totals.
+ *
+ * @param coalescingWindow how often the amounts added to the orders are folded into their totals, by a single update
+ *                         per order; 0 updates the total in the transaction adding the amount instead
+ */
+@ConfigurationProperties("order-total")
+public record OrderTotalProperties(@DefaultValue("100ms") Duration coalescingWindow) {
+}
@@ -0,0 +1,9 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@EnableConfigurationProperties(ReservationProperties.class)
+@Configuration
+public class ReservationConfiguration {
+}
@@ -0,0 +1,19 @@
+package com.ecommerce.simple.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Order items added as holds, until their order is confirmed.
+ *
+ * @param ttl       how long a hold keeps its product before it is given back
+ * @param tick      how late, at most, an expired hold is given back
+ * @param wheelSize the buckets of the timing wheel; holds further than this many ticks wait some rounds of it
+ */
+@ConfigurationProperties("reservation")
+public record ReservationProperties(@DefaultValue("15m") Duration ttl,
+                                    @DefaultValue("1s") Duration tick,
+                                    @DefaultValue("512") int wheelSize) {
+}
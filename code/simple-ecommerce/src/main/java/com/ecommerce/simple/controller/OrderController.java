@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -18,27 +19,41 @@ import java.util.List;
 @Slf4j
 public class OrderController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final OrderService orderService;
 
     @PostMapping(consumes = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE},
             produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public OrderResponseDTO createOrder(@RequestBody OrderRequestDTO orderRequestDTO) {
-        log.info("[ createOrder ] orderRequestDTO: {}", orderRequestDTO);
+    public OrderResponseDTO createOrder(@RequestBody OrderRequestDTO orderRequestDTO,
+                                        @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        log.info("[ createOrder ] orderRequestDTO: {}, idempotencyKey: {}", orderRequestDTO, idempotencyKey);
 
-        OrderResponseDTO orderResponseDTO = orderService.saveOrder(orderRequestDTO);
+        OrderResponseDTO orderResponseDTO = orderService.saveOrderOnce(orderRequestDTO, idempotencyKey);
         log.info("orderResponseDTO: {}", orderResponseDTO);
 
         return orderResponseDTO;
     }
 
     @GetMapping(produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public List<OrderResponseDTO> getAllOrders() {
-        log.info("[ getAllOrders ]");
+    public ResponseEntity<List<OrderResponseDTO>> getAllOrders(@RequestParam(required = false) Integer after,
+                                                               @RequestParam(required = false) Integer size) {
+        log.info("[ getAllOrders ] after: {}, size: {}", after, size);
+
+        ResponseEntity<List<OrderResponseDTO>> orderResponseEntity = orderService.getOrders(after, size);
+        log.info("orderResponseEntity headers: {}", orderResponseEntity.getHeaders());
+
+        return orderResponseEntity;
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAllOrders() {
+        log.info("[ exportAllOrders ]");
 
-        List<OrderResponseDTO> orderResponseDTOList = orderService.getOrders();
-        log.info("orderResponseDTOList: {}", orderResponseDTOList);
+        ResponseEntity<StreamingResponseBody> streamingResponseEntity = orderService.exportOrders();
+        log.info("streamingResponseEntity headers: {}", streamingResponseEntity.getHeaders());
 
-        return orderResponseDTOList;
+        return streamingResponseEntity;
     }
 
     @GetMapping(value = "/{id}",
@@ -52,6 +67,17 @@ public class OrderController {
         return orderResponseDTO;
     }
 
+    @PostMapping(value = "/{id}/confirm",
+            produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public OrderResponseDTO confirmOrderById(@PathVariable Integer id) {
+        log.info("[ confirmOrderById ] id: {}", id);
+
+        OrderResponseDTO orderResponseDTO = orderService.confirmOrder(id);
+        log.info("orderResponseDTO: {}", orderResponseDTO);
+
+        return orderResponseDTO;
+    }
+
     @PutMapping(value = "/{id}",
             consumes = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE},
             produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
@@ -1,5 +1,6 @@
 package com.ecommerce.simple.controller;
 
+import com.ecommerce.simple.dto.OrderItemBulkResponseDTO;
 import com.ecommerce.simple.dto.OrderItemRequestDTO;
 import com.ecommerce.simple.dto.OrderItemResponseDTO;
 import com.ecommerce.simple.model.OrderItem;
@@ -9,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -18,27 +20,53 @@ import java.util.List;
 @Slf4j
 public class OrderItemController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final OrderItemService orderItemService;
 
     @PostMapping(consumes = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE},
             produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public OrderItemResponseDTO createOrderItem(@RequestBody OrderItemRequestDTO orderItemRequestDTO) {
-        log.info("[ createOrderItem ] orderItemRequestDTO: {}", orderItemRequestDTO);
+    public OrderItemResponseDTO createOrderItem(@RequestBody OrderItemRequestDTO orderItemRequestDTO,
+                                                @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        log.info("[ createOrderItem ] orderItemRequestDTO: {}, idempotencyKey: {}", orderItemRequestDTO, idempotencyKey);
 
-        OrderItemResponseDTO orderItemResponseDTO = orderItemService.saveOrderItem(orderItemRequestDTO);
+        OrderItemResponseDTO orderItemResponseDTO = orderItemService.saveOrderItemOnce(orderItemRequestDTO, idempotencyKey);
         log.info("orderItemResponseDTO: {}", orderItemResponseDTO);
 
         return orderItemResponseDTO;
     }
 
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public List<OrderItemBulkResponseDTO> createOrderItems(@RequestBody List<OrderItemRequestDTO> orderItemRequestDTOList) {
+        log.info("[ createOrderItems ] orderItemRequestDTOList: {}", orderItemRequestDTOList);
+
+        List<OrderItemBulkResponseDTO> orderItemBulkResponseDTOList = orderItemService.saveOrderItems(orderItemRequestDTOList);
+        log.info("orderItemBulkResponseDTOList: {}", orderItemBulkResponseDTOList);
+
+        return orderItemBulkResponseDTOList;
+    }
+
     @GetMapping(produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public List<OrderItemResponseDTO> getAllOrderItems() {
-        log.info("[ getAllOrderItems ]");
+    public ResponseEntity<List<OrderItemResponseDTO>> getAllOrderItems(@RequestParam(required = false) Integer after,
+                                                                       @RequestParam(required = false) Integer size) {
+        log.info("[ getAllOrderItems ] after: {}, size: {}", after, size);
+
+        ResponseEntity<List<OrderItemResponseDTO>> orderItemResponseEntity = orderItemService.getOrderItems(after, size);
+        log.info("orderItemResponseEntity headers: {}", orderItemResponseEntity.getHeaders());
+
+        return orderItemResponseEntity;
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAllOrderItems() {
+        log.info("[ exportAllOrderItems ]");
 
-        List<OrderItemResponseDTO> orderItemResponseDTOList = orderItemService.getOrderItems();
-        log.info("orderItemResponseDTOList: {}", orderItemResponseDTOList);
+        ResponseEntity<StreamingResponseBody> streamingResponseEntity = orderItemService.exportOrderItems();
+        log.info("streamingResponseEntity headers: {}", streamingResponseEntity.getHeaders());
 
-        return orderItemResponseDTOList;
+        return streamingResponseEntity;
     }
 
     @GetMapping(value = "/{id}",
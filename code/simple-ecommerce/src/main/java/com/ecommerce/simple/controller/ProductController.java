@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -32,13 +33,24 @@ public class ProductController {
     }
 
     @GetMapping(produces = {MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public List<ProductResponseDTO> getAllProducts() {
-        log.info("[ getAllProducts ]");
+    public ResponseEntity<List<ProductResponseDTO>> getAllProducts(@RequestParam(required = false) Integer after,
+                                                                   @RequestParam(required = false) Integer size) {
+        log.info("[ getAllProducts ] after: {}, size: {}", after, size);
 
-        List<ProductResponseDTO> productResponseDTOList = productService.getProducts();
-        log.info("productResponseDTOList: {}", productResponseDTOList);
+        ResponseEntity<List<ProductResponseDTO>> productResponseEntity = productService.getProducts(after, size);
+        log.info("productResponseEntity headers: {}", productResponseEntity.getHeaders());
 
-        return productResponseDTOList;
+        return productResponseEntity;
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAllProducts() {
+        log.info("[ exportAllProducts ]");
+
+        ResponseEntity<StreamingResponseBody> streamingResponseEntity = productService.exportProducts();
+        log.info("streamingResponseEntity headers: {}", streamingResponseEntity.getHeaders());
+
+        return streamingResponseEntity;
     }
 
     @GetMapping(value = "/{id}",
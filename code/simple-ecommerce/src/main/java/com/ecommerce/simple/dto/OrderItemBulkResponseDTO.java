@@ -0,0 +1,16 @@
+package com.ecommerce.simple.dto;
+
+import com.ecommerce.simple.model.Error;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@AllArgsConstructor
+@Builder
+@Data
+public class OrderItemBulkResponseDTO {
+    private Integer line;
+    private Boolean success;
+    private OrderItemResponseDTO orderItem;
+    private Error error;
+}
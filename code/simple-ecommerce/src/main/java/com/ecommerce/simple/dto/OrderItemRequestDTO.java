@@ -12,4 +12,8 @@ import lombok.NoArgsConstructor;
 public class OrderItemRequestDTO {
     private Integer orderId;
     private Integer productId;
+    // units of the product, 1 when not set
+    private Integer quantity;
+    // holds the product until the order is confirmed, instead of selling it right away
+    private Boolean hold;
 }
@@ -3,7 +3,9 @@ package com.ecommerce.simple.dto;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
+@NoArgsConstructor
 @AllArgsConstructor
 @Builder
 @Data
@@ -11,6 +13,7 @@ public class OrderItemResponseDTO {
     private Integer id;
     private Integer orderId;
     private Integer productId;
+    private Integer quantity;
     private String productName;
     private String productDescription;
     private Double productPrice;
@@ -1,12 +1,16 @@
 package com.ecommerce.simple.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @NoArgsConstructor
+@AllArgsConstructor
 @Data
 public class OrderResponseDTO {
     private Integer id;
     private String description;
     private Double totalAmount;
+    // to be sent back with an update, which is refused once the row changed since
+    private Integer version;
 }
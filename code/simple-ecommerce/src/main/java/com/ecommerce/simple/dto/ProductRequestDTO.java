@@ -3,5 +3,6 @@ package com.ecommerce.simple.dto;
 public record ProductRequestDTO(String name,
                                 String description,
                                 Integer quantity,
-                                Double price) {
+                                Double price,
+                                Integer stockShards) {
 }
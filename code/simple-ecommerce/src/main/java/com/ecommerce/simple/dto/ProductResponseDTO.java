@@ -1,9 +1,11 @@
 package com.ecommerce.simple.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @NoArgsConstructor
+@AllArgsConstructor
 @Data
 public class ProductResponseDTO {
     private Integer id;
@@ -11,4 +13,7 @@ public class ProductResponseDTO {
     private String description;
     private Integer quantity;
     private Double price;
+    private Integer stockShards;
+    // to be sent back with an update, which is refused once the row changed since
+    private Integer version;
 }
@@ -0,0 +1,11 @@
+package com.ecommerce.simple.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConcurrentUpdateException extends RuntimeException {
+    public ConcurrentUpdateException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -4,6 +4,8 @@ import com.ecommerce.simple.model.Error;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +13,8 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionSystemException;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -22,16 +26,24 @@ import org.springframework.web.servlet.resource.NoResourceFoundException;
 
 import javax.naming.ServiceUnavailableException;
 import java.net.ConnectException;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static java.lang.String.format;
 import static org.springframework.http.HttpStatus.*;
 
 @Slf4j
 @ControllerAdvice
 public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
 
+    private static final String UNIQUE_VIOLATION = "23505";
+    // the detail PostgreSQL gives of a unique violation: Key (order_id, product_id)=(1, 2) already exists.
+    private static final Pattern DUPLICATE_KEY = Pattern.compile("Key \\((.+)\\)=\\((.*)\\) already exists");
+
     /**
      * 400
      */
@@ -60,6 +72,20 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
                 .body(new Error(BAD_REQUEST, getErrors(ex.getConstraintViolations())));
     }
 
+    /**
+     * 400
+     * <p>
+     * Entities are validated when they are flushed, which happens on commit when inserts are batched.
+     */
+    @NonNull
+    @ExceptionHandler(value = {TransactionSystemException.class})
+    public ResponseEntity<Object> handleTransactionSystemException(@NonNull TransactionSystemException ex) {
+        if (ex.getRootCause() instanceof ConstraintViolationException constraintViolationException) {
+            return handleConstraintViolationException(constraintViolationException);
+        }
+        return handleNotMappedException(ex);
+    }
+
     /**
      * 400
      */
@@ -73,6 +99,20 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
                 .body(new Error(BAD_REQUEST, ex));
     }
 
+    /**
+     * 400
+     * <p>
+     * Creates insert without looking for the row first, their unique constraints reporting the duplicates.
+     */
+    @NonNull
+    @ExceptionHandler(value = {DataIntegrityViolationException.class})
+    public ResponseEntity<Object> handleDataIntegrityViolationException(@NonNull DataIntegrityViolationException ex) {
+        if (ex.getMostSpecificCause() instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())) {
+            return handleCustomBadRequestException(new DuplicateKeyValueException(getDuplicateKeyMessage(sqlException)));
+        }
+        return handleNotMappedException(ex);
+    }
+
     /**
      * 404
      */
@@ -125,6 +165,19 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(new Error(NOT_ACCEPTABLE, ex), NOT_ACCEPTABLE);
     }
 
+    /**
+     * 409
+     * <p>
+     * A write lost a race against a concurrent one: retried without success, or saved from an older version.
+     */
+    @NonNull
+    @ExceptionHandler(value = {ConcurrentUpdateException.class, OptimisticLockingFailureException.class})
+    @ResponseStatus(CONFLICT)
+    public ResponseEntity<Object> handleConflict(@NonNull Exception ex) {
+        log.error("[ handleConflict ] {}", ex.getMessage());
+        return new ResponseEntity<>(new Error(CONFLICT, ex), CONFLICT);
+    }
+
     /**
      * 415
      */
@@ -139,6 +192,20 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(new Error(UNSUPPORTED_MEDIA_TYPE, ex), UNSUPPORTED_MEDIA_TYPE);
     }
 
+    private static String getDuplicateKeyMessage(SQLException sqlException) {
+        Matcher matcher = DUPLICATE_KEY.matcher(String.valueOf(sqlException.getMessage()));
+        if (!matcher.find()) {
+            return "Duplicate key value.";
+        }
+        String[] values = matcher.group(2).split(", ");
+        return switch (matcher.group(1)) {
+            case "name" -> format("Product '%s' already exists.", matcher.group(2));
+            case "description" -> format("Order '%s' already exists.", matcher.group(2));
+            case "order_id, product_id" -> format("Order item already exists for order: '%s' and product: '%s'.", values[0], values[1]);
+            default -> matcher.group() + ".";
+        };
+    }
+
     private List<String> getErrors(Set<ConstraintViolation<?>> constraintViolations) {
         return constraintViolations.stream()
                 .map(ConstraintViolation::getMessage)
@@ -146,6 +213,30 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 422
+     */
+    @NonNull
+    @ExceptionHandler(value = {IdempotencyKeyReusedException.class})
+    @ResponseStatus(UNPROCESSABLE_ENTITY)
+    public ResponseEntity<Object> handleIdempotencyKeyReusedException(@NonNull IdempotencyKeyReusedException ex) {
+        log.error("[ handleIdempotencyKeyReusedException ] {}", ex.getMessage());
+        return new ResponseEntity<>(new Error(UNPROCESSABLE_ENTITY, ex), UNPROCESSABLE_ENTITY);
+    }
+
+    /**
+     * 428
+     * <p>
+     * An update must tell the version it was read at, it would overwrite whatever was written since otherwise.
+     */
+    @NonNull
+    @ExceptionHandler(value = {PreconditionRequiredException.class})
+    @ResponseStatus(PRECONDITION_REQUIRED)
+    public ResponseEntity<Object> handlePreconditionRequiredException(@NonNull PreconditionRequiredException ex) {
+        log.error("[ handlePreconditionRequiredException ] {}", ex.getMessage());
+        return new ResponseEntity<>(new Error(PRECONDITION_REQUIRED, ex), PRECONDITION_REQUIRED);
+    }
+
     /**
      * 500
      */
@@ -161,10 +252,24 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
      * 503
      */
     @NonNull
-    @ExceptionHandler(value = {ConnectException.class, ServiceUnavailableException.class})
+    @ExceptionHandler(value = {ConnectException.class, ServiceUnavailableException.class, DatabaseBusyException.class})
     @ResponseStatus(SERVICE_UNAVAILABLE)
     public ResponseEntity<Object> handleServiceUnavailable(@NonNull Exception ex) {
         log.error("[ handleServiceUnavailable ] {}", ex.getMessage());
         return new ResponseEntity<>(new Error(SERVICE_UNAVAILABLE, ex), SERVICE_UNAVAILABLE);
     }
+
+    /**
+     * 503
+     * <p>
+     * A transaction begins with its connection, so the database bulkhead rejects it while it is being opened.
+     */
+    @NonNull
+    @ExceptionHandler(value = {CannotCreateTransactionException.class})
+    public ResponseEntity<Object> handleCannotCreateTransactionException(@NonNull CannotCreateTransactionException ex) {
+        if (ex.getRootCause() instanceof DatabaseBusyException databaseBusyException) {
+            return handleServiceUnavailable(databaseBusyException);
+        }
+        return handleNotMappedException(ex);
+    }
 }
@@ -0,0 +1,11 @@
+package com.ecommerce.simple.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class DatabaseBusyException extends DomainException {
+    public DatabaseBusyException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.ecommerce.simple.exception;
+
+/**
+ * An expected outcome of a request, such as a missing id, rather than a failure: it is answered by a 4xx or a 503 and
+ * only its message is logged, so it neither fills in a stack trace nor keeps suppressed exceptions.
+ */
+public abstract class DomainException extends RuntimeException {
+    protected DomainException(final String message) {
+        super(message, null, false, false);
+    }
+}
@@ -4,7 +4,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(HttpStatus.NOT_FOUND)
-public class DuplicateKeyValueException extends RuntimeException {
+public class DuplicateKeyValueException extends DomainException {
     public DuplicateKeyValueException(final String message) {
         super(message);
     }
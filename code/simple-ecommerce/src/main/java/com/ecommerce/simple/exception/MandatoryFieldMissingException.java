@@ -4,7 +4,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(HttpStatus.BAD_REQUEST)
-public class MandatoryFieldMissingException extends RuntimeException {
+public class MandatoryFieldMissingException extends DomainException {
     public MandatoryFieldMissingException(final String message) {
         super(message);
     }
@@ -4,7 +4,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(HttpStatus.BAD_REQUEST)
-public class NoProductLeftOverException extends RuntimeException {
+public class NoProductLeftOverException extends DomainException {
     public NoProductLeftOverException(final String message) {
         super(message);
     }
@@ -0,0 +1,11 @@
+package com.ecommerce.simple.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_REQUIRED)
+public class PreconditionRequiredException extends DomainException {
+    public PreconditionRequiredException(final String message) {
+        super(message);
+    }
+}
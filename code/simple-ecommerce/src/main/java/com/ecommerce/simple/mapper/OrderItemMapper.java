@@ -0,0 +1,26 @@
+package com.ecommerce.simple.mapper;
+
+import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.dto.OrderItemResponseDTO;
+import com.ecommerce.simple.model.OrderItem;
+import com.ecommerce.simple.model.Product;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface OrderItemMapper {
+
+    @Mapping(target = "hold", ignore = true)
+    OrderItemRequestDTO toOrderItemRequestDTO(OrderItem orderItem);
+
+    @Mapping(target = "id", source = "orderItem.id")
+    @Mapping(target = "orderId", source = "orderItem.orderId")
+    @Mapping(target = "productId", source = "orderItem.productId")
+    @Mapping(target = "quantity", source = "orderItem.quantity")
+    @Mapping(target = "productName", source = "product.name")
+    @Mapping(target = "productDescription", source = "product.description")
+    @Mapping(target = "productPrice", source = "product.price")
+    OrderItemResponseDTO toOrderItemResponseDTO(OrderItem orderItem, Product product);
+}
@@ -0,0 +1,13 @@
+package com.ecommerce.simple.mapper;
+
+import com.ecommerce.simple.dto.OrderResponseDTO;
+import com.ecommerce.simple.model.Order;
+import org.mapstruct.Mapper;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface OrderMapper {
+
+    OrderResponseDTO toOrderResponseDTO(Order order);
+}
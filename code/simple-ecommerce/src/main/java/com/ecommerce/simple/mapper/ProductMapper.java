@@ -0,0 +1,28 @@
+package com.ecommerce.simple.mapper;
+
+import com.ecommerce.simple.dto.ProductRequestDTO;
+import com.ecommerce.simple.dto.ProductResponseDTO;
+import com.ecommerce.simple.model.Product;
+import com.ecommerce.simple.service.ProductCache.CachedProduct;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+import java.util.List;
+
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface ProductMapper {
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "createdOn", ignore = true)
+    @Mapping(target = "lastUpdatedOn", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    Product toProduct(ProductRequestDTO productRequestDTO);
+
+    ProductResponseDTO toProductResponseDTO(Product product);
+
+    ProductResponseDTO toProductResponseDTO(CachedProduct product);
+
+    List<ProductResponseDTO> toProductResponseDTOList(List<Product> products);
+}
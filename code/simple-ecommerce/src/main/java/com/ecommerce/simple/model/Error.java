@@ -6,9 +6,14 @@ import lombok.ToString;
 import org.springframework.http.HttpStatus;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 @Getter
 public class Error {
+    private static final String APPLICATION_PACKAGE = "com.ecommerce.simple";
+    private static final Pattern METHOD_SIGNATURE = Pattern.compile("public com\\.ecommerce\\.simple.*");
+    private static final Pattern CLASS_NAME = Pattern.compile(" for \\[class com\\.ecommerce\\.simple.*\\]");
+
     private final Integer httpCode;
     private final String message;
     private final String detailedMessage;
@@ -25,9 +30,14 @@ public class Error {
         this.detailedMessage = errors.toString();
     }
 
-    private String cleanUpMessage(final String message) {
-        return message
-                .replaceAll("public com\\.ecommerce\\.simple.*", "")
-                .replaceAll(" for \\[class com\\.ecommerce\\.simple.*\\]", "");
+    /**
+     * Removes the signatures and classes of the application that Spring puts in some of its messages.
+     */
+    private static String cleanUpMessage(final String message) {
+        if (!message.contains(APPLICATION_PACKAGE)) {
+            return message;
+        }
+        String cleanedUpMessage = METHOD_SIGNATURE.matcher(message).replaceAll("");
+        return CLASS_NAME.matcher(cleanedUpMessage).replaceAll("");
     }
 }
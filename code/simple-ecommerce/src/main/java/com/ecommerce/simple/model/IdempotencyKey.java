@@ -0,0 +1,35 @@
+package com.ecommerce.simple.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+@Table(name = "idempotency_key")
+public class IdempotencyKey {
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Column(length = 64, nullable = false)
+    private String requestHash;
+
+    @Column(columnDefinition = "text", nullable = false)
+    private String response;
+
+    private Instant createdOn;
+
+    @Column(nullable = false)
+    private Instant expiresOn;
+}
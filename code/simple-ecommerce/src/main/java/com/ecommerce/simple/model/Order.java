@@ -21,7 +21,8 @@ import java.time.Instant;
 @Table(name = "\"order\"")
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = 50)
     private Integer id;
 
     @NotNull(message = "description is mandatory")
@@ -31,10 +32,18 @@ public class Order {
 
     private Double totalAmount;
 
-    @CreationTimestamp(source = SourceType.DB)
+    @CreationTimestamp(source = SourceType.VM)
     private Instant createdOn;
 
-    @UpdateTimestamp(source = SourceType.DB)
+    @UpdateTimestamp(source = SourceType.VM)
     private Instant lastUpdatedOn;
+
+    /**
+     * Incremented by every change of the row, an order saved from an older version is refused. The version read also
+     * counts the amounts not folded into the total yet, see
+     * {@link com.ecommerce.simple.service.OrderTotalCoalescer}.
+     */
+    @Version
+    private Integer version;
 }
 
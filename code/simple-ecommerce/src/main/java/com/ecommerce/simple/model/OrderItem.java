@@ -1,21 +1,26 @@
 package com.ecommerce.simple.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
 @Data
 @Builder
-@Table(name = "order_product")
+@Table(name = "order_product", uniqueConstraints = @UniqueConstraint(columnNames = {"order_id", "product_id"}))
 public class OrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_product_seq")
+    @SequenceGenerator(name = "order_product_seq", sequenceName = "order_product_seq", allocationSize = 50)
     private Integer id;
 
     @NotNull(message = "orderId is mandatory")
@@ -23,4 +28,16 @@ public class OrderItem {
 
     @NotNull(message = "productId is mandatory")
     private Integer productId;
+
+    /**
+     * Units of the product in the order, adding the product to the order again adds to them.
+     */
+    @Min(value = 1, message = "quantity must be positive")
+    private Integer quantity;
+
+    /**
+     * Set while the order item only holds its product, see {@link com.ecommerce.simple.service.ReservationService}.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant reservedUntil;
 }
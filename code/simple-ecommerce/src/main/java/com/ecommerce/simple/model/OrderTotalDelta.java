@@ -0,0 +1,31 @@
+package com.ecommerce.simple.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An amount added to the total of an order and not folded into it yet, see
+ * {@link com.ecommerce.simple.service.OrderTotalCoalescer}.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+@Table(name = "order_total_delta")
+public class OrderTotalDelta {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Integer orderId;
+
+    private Double amount;
+}
@@ -1,6 +1,7 @@
 package com.ecommerce.simple.model;
 
 import jakarta.persistence.*;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -21,7 +22,8 @@ import java.time.Instant;
 @Builder
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Integer id;
 
     @NotBlank(message = "name is mandatory")
@@ -38,9 +40,22 @@ public class Product {
     @NotNull(message = "price is mandatory")
     private Double price;
 
-    @CreationTimestamp(source = SourceType.DB)
+    /**
+     * Number of counter rows the stock is split into, for products too hot for a single row; not split when empty or 0.
+     * The quantity of a split product is the sum of its counters, see {@link com.ecommerce.simple.service.ProductStockService}.
+     */
+    @Min(value = 0, message = "stockShards must not be negative")
+    private Integer stockShards;
+
+    @CreationTimestamp(source = SourceType.VM)
     private Instant createdOn;
 
-    @UpdateTimestamp(source = SourceType.DB)
+    @UpdateTimestamp(source = SourceType.VM)
     private Instant lastUpdatedOn;
+
+    /**
+     * Incremented by every change of the row, a product saved from an older version is refused.
+     */
+    @Version
+    private Integer version;
 }
@@ -0,0 +1,40 @@
+package com.ecommerce.simple.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * One of the counter rows the stock of a hot product is split into, so that concurrent orders lock different rows.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+@IdClass(ProductStockShard.Key.class)
+@Table(name = "product_stock_shard")
+public class ProductStockShard {
+    @Id
+    private Integer productId;
+
+    @Id
+    private Integer shard;
+
+    private Integer quantity;
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    public static class Key implements Serializable {
+        private Integer productId;
+        private Integer shard;
+    }
+}
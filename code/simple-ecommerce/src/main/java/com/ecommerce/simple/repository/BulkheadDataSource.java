@@ -0,0 +1,84 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.service.DatabaseBulkhead;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.lang.NonNull;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Takes a permit of the {@link DatabaseBulkhead} with every connection, given back when the connection is closed.
+ * Every repository, transaction and query goes through the data source, and a transaction holds a single connection
+ * for its whole duration, so it takes a single permit whatever the repositories it calls.
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+
+    // resolved on the first connection, the meter registry of the bulkhead is not ready when the data source is
+    private final Supplier<DatabaseBulkhead> databaseBulkhead;
+
+    public BulkheadDataSource(DataSource targetDataSource, Supplier<DatabaseBulkhead> databaseBulkhead) {
+        super(targetDataSource);
+        this.databaseBulkhead = databaseBulkhead;
+    }
+
+    @NonNull
+    @Override
+    public Connection getConnection() throws SQLException {
+        return withPermit(super::getConnection);
+    }
+
+    @NonNull
+    @Override
+    public Connection getConnection(@NonNull String username, @NonNull String password) throws SQLException {
+        return withPermit(() -> super.getConnection(username, password));
+    }
+
+    private Connection withPermit(ConnectionSource connectionSource) throws SQLException {
+        DatabaseBulkhead bulkhead = databaseBulkhead.get();
+        if (!bulkhead.enter()) {
+            return connectionSource.getConnection();
+        }
+        try {
+            return releasingOnClose(connectionSource.getConnection(), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.exit();
+            throw e;
+        }
+    }
+
+    private static Connection releasingOnClose(Connection connection, DatabaseBulkhead bulkhead) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(BulkheadDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        // closed more than once by some callers, the permit is given back only once
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            bulkhead.exit();
+                        }
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+}
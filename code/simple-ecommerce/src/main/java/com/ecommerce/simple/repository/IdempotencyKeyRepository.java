@@ -0,0 +1,50 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.model.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@RepositoryRestResource(exported = false)
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    @Query(value = """
+            SELECT *
+              FROM idempotency_key
+             WHERE id = :id
+               AND expires_on > now()
+            """, nativeQuery = true)
+    Optional<IdempotencyKey> findUnexpiredById(@Param("id") String id);
+
+    /**
+     * Stores the response of a key, unless another request stored one first and it has not expired yet.
+     *
+     * @return the id, or empty when the key was already taken
+     */
+    @Transactional
+    @Query(value = """
+            INSERT INTO idempotency_key (id, request_hash, response, created_on, expires_on)
+            VALUES (:id, :requestHash, :response, now(), now() + make_interval(secs => :ttlSeconds))
+            ON CONFLICT (id) DO UPDATE
+               SET request_hash = excluded.request_hash,
+                   response = excluded.response,
+                   created_on = excluded.created_on,
+                   expires_on = excluded.expires_on
+             WHERE idempotency_key.expires_on <= now()
+            RETURNING id
+            """, nativeQuery = true)
+    Optional<String> insert(@Param("id") String id,
+                            @Param("requestHash") String requestHash,
+                            @Param("response") String response,
+                            @Param("ttlSeconds") long ttlSeconds);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_key WHERE expires_on <= now()", nativeQuery = true)
+    int deleteExpired();
+}
@@ -1,10 +1,139 @@
 package com.ecommerce.simple.repository;
 
+import com.ecommerce.simple.dto.OrderItemResponseDTO;
 import com.ecommerce.simple.model.OrderItem;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface OrderItemRepository extends JpaRepository<OrderItem, Integer>, OrderItemRepositoryCustom {
+
+    /**
+     * Inserts the order item or, when its order already has the product, adds its quantity to the existing one,
+     * in a single statement. A hold added to a hold stays one until the latest of both deadlines, a sale added to a
+     * sale stays one; a hold and a sale are never added up, the existing order item is then left as is.
+     */
+    String UPSERT_ORDER_ITEM = """
+            INSERT INTO order_product (id, order_id, product_id, quantity, reserved_until)
+            VALUES (nextval('order_product_seq'), :orderId, :productId, :quantity, :reservedUntil)
+            ON CONFLICT (order_id, product_id) DO UPDATE
+               SET quantity = order_product.quantity + EXCLUDED.quantity,
+                   reserved_until = greatest(order_product.reserved_until, EXCLUDED.reserved_until)
+             WHERE (order_product.reserved_until IS NULL) = (EXCLUDED.reserved_until IS NULL)
+            """;
 
-public interface OrderItemRepository extends JpaRepository<OrderItem, Integer> {
     Optional<OrderItem> findByProductIdAndOrderId(Integer productId, Integer orderId);
+
+    @RestResource(exported = false)
+    List<OrderItem> findByOrderIdIn(Collection<Integer> orderIds);
+
+    /**
+     * @return the order item inserted, or the existing one with the quantity added, or empty when one of them is a
+     * hold and the other a sale
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Query(value = UPSERT_ORDER_ITEM + "RETURNING *", nativeQuery = true)
+    Optional<OrderItem> upsert(@Param("orderId") Integer orderId,
+                     @Param("productId") Integer productId,
+                     @Param("quantity") Integer quantity,
+                     @Param("reservedUntil") Instant reservedUntil);
+
+    @RestResource(exported = false)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select oi from OrderItem oi where oi.id = :id")
+    Optional<OrderItem> findByIdForUpdate(@Param("id") Integer id);
+
+    /**
+     * Deletes the order item in a single statement, so that only one of concurrent deletes gets it back.
+     *
+     * @return the deleted order item, or empty when there was none with such id
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Query(value = """
+            DELETE FROM order_product
+             WHERE id = :id
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<OrderItem> deleteReturningById(@Param("id") Integer id);
+
+    @RestResource(exported = false)
+    List<OrderItem> findByReservedUntilNotNull();
+
+    /**
+     * Deletes the holds among these order items that expired, in a single statement, so that a hold confirmed
+     * concurrently is either confirmed or released, never both.
+     *
+     * @return the holds deleted
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Query(value = """
+            DELETE FROM order_product
+             WHERE id IN (:ids)
+               AND reserved_until <= :now
+            RETURNING *
+            """, nativeQuery = true)
+    List<OrderItem> deleteExpiredHolds(@Param("ids") Collection<Integer> ids, @Param("now") Instant now);
+
+    /**
+     * Turns the holds of the order that have not expired yet into sales.
+     *
+     * @return the number of holds confirmed
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE order_product
+               SET reserved_until = NULL
+             WHERE order_id = :orderId
+               AND reserved_until > :now
+            """, nativeQuery = true)
+    int confirmHolds(@Param("orderId") Integer orderId, @Param("now") Instant now);
+
+    /**
+     * Order item joined with its product, projected straight into the response.
+     */
+    String SELECT_ORDER_ITEM_RESPONSE = """
+            select new com.ecommerce.simple.dto.OrderItemResponseDTO(oi.id, oi.orderId, oi.productId, oi.quantity, p.name, p.description, p.price)
+              from OrderItem oi
+              join Product p on p.id = oi.productId
+            """;
+
+    @RestResource(exported = false)
+    @Query(SELECT_ORDER_ITEM_RESPONSE + """
+             where oi.id = :id
+            """)
+    Optional<OrderItemResponseDTO> findResponseById(@Param("id") Integer id);
+
+    @RestResource(exported = false)
+    @Query(SELECT_ORDER_ITEM_RESPONSE + """
+             where oi.id > :id
+             order by oi.id
+            """)
+    List<OrderItemResponseDTO> findResponsesByIdGreaterThan(@Param("id") Integer id, Limit limit);
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(SELECT_ORDER_ITEM_RESPONSE + """
+             order by oi.id
+            """)
+    Stream<OrderItemResponseDTO> streamAll();
 }
@@ -0,0 +1,20 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.model.OrderItem;
+import org.springframework.data.rest.core.annotation.RestResource;
+
+import java.util.List;
+
+public interface OrderItemRepositoryCustom {
+
+    /**
+     * Inserts the order items, or adds their quantity to the existing ones of the same order and product, in a
+     * single JDBC batch. The order items must have distinct order and product pairs. The persistence context is
+     * flushed before and cleared after, its entities read before would not hold what the batch wrote.
+     *
+     * @return the update count of each order item, in the same order, 0 when a hold and a sale were not added up,
+     * or {@link java.sql.Statement#SUCCESS_NO_INFO} when the driver rewrote the batch
+     */
+    @RestResource(exported = false)
+    int[] upsertAll(List<OrderItem> orderItems);
+}
@@ -0,0 +1,44 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.model.OrderItem;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static com.ecommerce.simple.repository.OrderItemRepository.UPSERT_ORDER_ITEM;
+
+@RequiredArgsConstructor
+public class OrderItemRepositoryCustomImpl implements OrderItemRepositoryCustom {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Override
+    public int[] upsertAll(List<OrderItem> orderItems) {
+        // the batch goes straight to the connection, behind the persistence context
+        entityManager.flush();
+
+        SqlParameterSource[] batchArgs = orderItems.stream()
+                .map(orderItem -> new MapSqlParameterSource()
+                        .addValue("orderId", orderItem.getOrderId())
+                        .addValue("productId", orderItem.getProductId())
+                        .addValue("quantity", orderItem.getQuantity())
+                        // bound as the entities bind their instants
+                        .addValue("reservedUntil", new SqlParameterValue(Types.TIMESTAMP_WITH_TIMEZONE,
+                                orderItem.getReservedUntil() == null ? null : OffsetDateTime.ofInstant(orderItem.getReservedUntil(), ZoneOffset.UTC))))
+                .toArray(SqlParameterSource[]::new);
+
+        int[] upsertCounts = namedParameterJdbcTemplate.batchUpdate(UPSERT_ORDER_ITEM, batchArgs);
+        // the order items it already held are stale now, they are read again from their rows
+        entityManager.clear();
+        return upsertCounts;
+    }
+}
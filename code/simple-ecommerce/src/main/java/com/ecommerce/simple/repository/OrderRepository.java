@@ -1,7 +1,113 @@
 package com.ecommerce.simple.repository;
 
+import com.ecommerce.simple.dto.OrderResponseDTO;
 import com.ecommerce.simple.model.Order;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface OrderRepository extends JpaRepository<Order, Integer> {
+
+    /**
+     * Order projected straight into the response, its total including the amounts not folded into it yet, see
+     * {@link com.ecommerce.simple.service.OrderTotalCoalescer}. Each of them changes the total read, so each counts in
+     * the version read too.
+     */
+    String SELECT_ORDER_RESPONSE = """
+            select new com.ecommerce.simple.dto.OrderResponseDTO(o.id, o.description,
+                   cast(coalesce(o.totalAmount, 0) + coalesce((select sum(d.amount) from OrderTotalDelta d where d.orderId = o.id), 0) as Double),
+                   cast(o.version + (select count(d) from OrderTotalDelta d where d.orderId = o.id) as Integer))
+              from Order o
+            """;
+
+    @RestResource(exported = false)
+    @Query(SELECT_ORDER_RESPONSE + """
+             where o.id = :id
+            """)
+    Optional<OrderResponseDTO> findResponseById(@Param("id") Integer id);
+
+    @RestResource(exported = false)
+    @Query(SELECT_ORDER_RESPONSE + """
+             where o.id > :id
+             order by o.id
+            """)
+    List<OrderResponseDTO> findResponsesByIdGreaterThan(@Param("id") Integer id, Limit limit);
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(SELECT_ORDER_RESPONSE + """
+             order by o.id
+            """)
+    Stream<OrderResponseDTO> streamAll();
+
+    /**
+     * Adds the amount, negative to subtract it, to the order total inside the database, so concurrent items of the same
+     * order never lose an update.
+     *
+     * @return the new total amount, or empty when the order does not exist
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Query(value = """
+            UPDATE "order"
+               SET total_amount = coalesce(total_amount, 0) + :amount,
+                   last_updated_on = now(),
+                   version = version + 1
+             WHERE id = :id
+            RETURNING total_amount
+            """, nativeQuery = true)
+    Optional<Double> increaseTotalAmount(@Param("id") Integer id, @Param("amount") Double amount);
+
+    /**
+     * Replaces the order in a single statement, without reading it first. Its total replaces the amounts not folded
+     * into it yet too, deleted by the same statement.
+     *
+     * @param order its version must still be the one read, counting the amounts not folded yet
+     * @return the order updated, or empty when it does not exist or its version changed since
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Query(value = """
+            WITH updated AS (
+                UPDATE "order" o
+                   SET description = :#{#order.description},
+                       total_amount = :#{#order.totalAmount},
+                       last_updated_on = now(),
+                       version = :#{#order.version} + 1
+                 WHERE o.id = :id
+                   AND o.version + (SELECT count(*) FROM order_total_delta d WHERE d.order_id = o.id) = :#{#order.version}
+                RETURNING o.*
+            ), replaced AS (
+                DELETE FROM order_total_delta d
+                 USING updated
+                 WHERE d.order_id = updated.id
+            )
+            SELECT * FROM updated
+            """, nativeQuery = true)
+    Optional<Order> updateReturningById(@Param("id") Integer id, @Param("order") Order order);
+
+    /**
+     * Deletes the order in a single statement, without reading it first.
+     *
+     * @return the number of orders deleted, 0 when there was none with such id
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM "order"
+             WHERE id = :id
+            """, nativeQuery = true)
+    int deleteCountingById(@Param("id") Integer id);
 }
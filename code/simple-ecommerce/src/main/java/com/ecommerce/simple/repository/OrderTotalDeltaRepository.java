@@ -0,0 +1,70 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.model.OrderTotalDelta;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * The amounts added to the order totals and not folded into them yet. Inserting one does not touch the order row, so
+ * concurrent order items of the same order do not wait on each other.
+ */
+@RepositoryRestResource(exported = false)
+public interface OrderTotalDeltaRepository extends JpaRepository<OrderTotalDelta, Long> {
+
+    /**
+     * Records the amount to add to the order total.
+     *
+     * @return the number of amounts inserted, 0 when the order does not exist
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO order_total_delta (order_id, amount)
+            SELECT id, :amount FROM "order" WHERE id = :orderId
+            """, nativeQuery = true)
+    int insert(@Param("orderId") Integer orderId, @Param("amount") Double amount);
+
+    /**
+     * Deletes the oldest amounts committed and adds them to their order totals, in a single statement: an amount is
+     * either still there or in its total, never both nor lost. The amounts locked by a concurrent fold are skipped.
+     * <p>
+     * The version read of an order counts its amounts not folded yet, so its row version moves by as many amounts as
+     * it is given: the total and the version read do not change.
+     *
+     * @return the total of each order updated, with the number of amounts it was given
+     */
+    @Transactional
+    @Query(value = """
+            WITH folded AS (
+                DELETE FROM order_total_delta
+                 WHERE id IN (SELECT id FROM order_total_delta ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED)
+                RETURNING order_id, amount
+            ), summed AS (
+                SELECT order_id, sum(amount) AS amount, count(*) AS amounts
+                  FROM folded
+                 GROUP BY order_id
+            )
+            UPDATE "order" o
+               SET total_amount = coalesce(o.total_amount, 0) + summed.amount,
+                   last_updated_on = now(),
+                   version = o.version + CAST(summed.amounts AS integer)
+              FROM summed
+             WHERE o.id = summed.order_id
+            RETURNING o.id AS "orderId", o.total_amount AS "totalAmount", CAST(summed.amounts AS integer) AS "amounts"
+            """, nativeQuery = true)
+    List<FoldedTotal> fold(@Param("limit") int limit);
+
+    interface FoldedTotal {
+        Integer getOrderId();
+
+        Double getTotalAmount();
+
+        Integer getAmounts();
+    }
+}
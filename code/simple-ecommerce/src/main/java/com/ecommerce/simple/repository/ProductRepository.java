@@ -1,10 +1,143 @@
 package com.ecommerce.simple.repository;
 
+import com.ecommerce.simple.dto.ProductResponseDTO;
 import com.ecommerce.simple.model.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.ecommerce.simple.configuration.CacheConfiguration.PRODUCTS_CACHE;
+
+/**
+ * Products are read through the {@code products} cache by id, see {@link com.ecommerce.simple.service.ProductCache},
+ * so every method changing a product row evicts it.
+ */
+public interface ProductRepository extends JpaRepository<Product, Integer>, ProductRepositoryCustom {
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0.id", condition = "#p0.id != null", beforeInvocation = true)
+    @NonNull
+    <S extends Product> S save(@NonNull S product);
+
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, allEntries = true, beforeInvocation = true)
+    @NonNull
+    <S extends Product> List<S> saveAll(@NonNull Iterable<S> products);
+
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0", beforeInvocation = true)
+    void deleteById(@NonNull Integer id);
+
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0.id", condition = "#p0.id != null", beforeInvocation = true)
+    void delete(@NonNull Product product);
 
-public interface ProductRepository extends JpaRepository<Product, Integer> {
     Optional<Product> findByName(String name);
+
+    @RestResource(exported = false)
+    List<Product> findByIdGreaterThanOrderByIdAsc(Integer id, Limit limit);
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            select new com.ecommerce.simple.dto.ProductResponseDTO(p.id, p.name, p.description,
+                   cast(p.quantity + coalesce((select sum(s.quantity) from ProductStockShard s where s.productId = p.id), 0) as Integer),
+                   p.price, p.stockShards, p.version)
+              from Product p
+             order by p.id
+            """)
+    Stream<ProductResponseDTO> streamAll();
+
+    /**
+     * Decrements the product stock only when there is enough left over, in a single statement.
+     *
+     * @return the product with the reduced quantity, or empty when the product does not exist or has not enough stock
+     */
+    @RestResource(exported = false)
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0", beforeInvocation = true)
+    @Transactional
+    @Query(value = """
+            UPDATE product
+               SET quantity = quantity - :quantity,
+                   last_updated_on = now(),
+                   version = version + 1
+             WHERE id = :id
+               AND quantity >= :quantity
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<Product> reserveQuantity(@Param("id") Integer id, @Param("quantity") Integer quantity);
+
+    /**
+     * Gives back stock to the product in a single statement.
+     *
+     * @return the product with the increased quantity, or empty when the product does not exist
+     */
+    @RestResource(exported = false)
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0", beforeInvocation = true)
+    @Transactional
+    @Query(value = """
+            UPDATE product
+               SET quantity = quantity + :quantity,
+                   last_updated_on = now(),
+                   version = version + 1
+             WHERE id = :id
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<Product> releaseQuantity(@Param("id") Integer id, @Param("quantity") Integer quantity);
+
+    /**
+     * Replaces the product in a single statement, without reading it first. A product that is no longer split has its
+     * counters deleted by the same statement.
+     *
+     * @param product its version must still be the one of the row
+     * @return the product updated, or empty when it does not exist or its version changed since
+     */
+    @RestResource(exported = false)
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0", beforeInvocation = true)
+    @Transactional
+    @Query(value = """
+            WITH updated AS (
+                UPDATE product
+                   SET name = :#{#product.name},
+                       description = :#{#product.description},
+                       quantity = :#{#product.quantity},
+                       price = :#{#product.price},
+                       stock_shards = :#{#product.stockShards},
+                       last_updated_on = now(),
+                       version = version + 1
+                 WHERE id = :id
+                   AND version = :#{#product.version}
+                RETURNING *
+            ), unsplit AS (
+                DELETE FROM product_stock_shard s
+                 USING updated
+                 WHERE s.product_id = updated.id
+                   AND coalesce(updated.stock_shards, 0) = 0
+            )
+            SELECT * FROM updated
+            """, nativeQuery = true)
+    Optional<Product> updateReturningById(@Param("id") Integer id, @Param("product") Product product);
+
+    /**
+     * Deletes the product in a single statement, without reading it first.
+     *
+     * @return the number of products deleted, 0 when there was none with such id
+     */
+    @RestResource(exported = false)
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#p0", beforeInvocation = true)
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM product
+             WHERE id = :id
+            """, nativeQuery = true)
+    int deleteCountingById(@Param("id") Integer id);
 }
@@ -0,0 +1,16 @@
+package com.ecommerce.simple.repository;
+
+import org.springframework.data.rest.core.annotation.RestResource;
+
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Decrements the stock of every product by its quantity in a single JDBC batch, only when there is enough left over.
+     *
+     * @return the update count of each product, in the same order: 1 when reserved, 0 when there was not enough stock
+     */
+    @RestResource(exported = false)
+    int[] reserveQuantities(List<Integer> productIds, List<Integer> quantities);
+}
@@ -0,0 +1,50 @@
+package com.ecommerce.simple.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.NonNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+import static com.ecommerce.simple.configuration.CacheConfiguration.PRODUCTS_CACHE;
+
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final String RESERVE_QUANTITY = """
+            UPDATE product
+               SET quantity = quantity - ?,
+                   last_updated_on = now(),
+                   version = version + 1
+             WHERE id = ?
+               AND quantity >= ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+
+    @Override
+    public int[] reserveQuantities(List<Integer> productIds, List<Integer> quantities) {
+        Optional.ofNullable(cacheManager.getCache(PRODUCTS_CACHE))
+                .ifPresent(cache -> productIds.forEach(cache::evictIfPresent));
+
+        return jdbcTemplate.batchUpdate(RESERVE_QUANTITY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(@NonNull PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, quantities.get(i));
+                ps.setInt(2, productIds.get(i));
+                ps.setInt(3, quantities.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return productIds.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package com.ecommerce.simple.repository;
+
+import com.ecommerce.simple.model.ProductStockShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The counters of the products whose stock is split. None of these statements touch the product row, so they
+ * leave the cached product alone.
+ */
+@RepositoryRestResource(exported = false)
+public interface ProductStockShardRepository extends JpaRepository<ProductStockShard, ProductStockShard.Key> {
+
+    /**
+     * Decrements a counter picked at random among the ones with enough stock, in a single statement.
+     *
+     * @return the number of counters of the product, none when its stock is not split, of the ones with enough stock
+     * and of the ones decremented: none decremented while some had enough means a concurrent order took it first
+     */
+    @Transactional
+    @Query(value = """
+            WITH candidate AS (
+                SELECT shard
+                  FROM product_stock_shard
+                 WHERE product_id = :productId
+                   AND quantity >= :quantity
+                 ORDER BY random()
+                 LIMIT 1
+            ), reserved AS (
+                UPDATE product_stock_shard s
+                   SET quantity = s.quantity - :quantity
+                  FROM candidate c
+                 WHERE s.product_id = :productId
+                   AND s.shard = c.shard
+                   AND s.quantity >= :quantity
+                RETURNING s.shard
+            )
+            SELECT (SELECT count(*) FROM product_stock_shard WHERE product_id = :productId) AS shards,
+                   (SELECT count(*) FROM candidate) AS candidates,
+                   (SELECT count(*) FROM reserved) AS reserved
+            """, nativeQuery = true)
+    ShardReservation reserve(@Param("productId") Integer productId, @Param("quantity") Integer quantity);
+
+    /**
+     * Takes the quantity from several counters, for an order no single counter has enough stock for. Locks all the
+     * counters of the product, in order, then draws from them in that order when their sum is enough, in a single
+     * statement.
+     *
+     * @return the number of counters of the product, of the ones drawn from and of the ones decremented: none
+     * decremented means the counters together had not enough stock
+     */
+    @Transactional
+    @Query(value = """
+            WITH locked AS (
+                SELECT shard, quantity
+                  FROM product_stock_shard
+                 WHERE product_id = :productId
+                 ORDER BY shard
+                   FOR UPDATE
+            ), drawn AS (
+                SELECT shard,
+                       least(quantity, greatest(:quantity - (sum(quantity) OVER (ORDER BY shard) - quantity), 0)) AS taken
+                  FROM locked
+                 WHERE (SELECT sum(quantity) FROM locked) >= :quantity
+            ), reserved AS (
+                UPDATE product_stock_shard s
+                   SET quantity = s.quantity - d.taken
+                  FROM drawn d
+                 WHERE s.product_id = :productId
+                   AND s.shard = d.shard
+                   AND d.taken > 0
+                   AND s.quantity >= d.taken
+                RETURNING s.shard
+            )
+            SELECT (SELECT count(*) FROM locked) AS shards,
+                   (SELECT count(*) FROM drawn WHERE taken > 0) AS candidates,
+                   (SELECT count(*) FROM reserved) AS reserved
+            """, nativeQuery = true)
+    ShardReservation reserveAcross(@Param("productId") Integer productId, @Param("quantity") Integer quantity);
+
+    /**
+     * Gives back stock to a counter picked at random.
+     *
+     * @return the counter, or empty when the stock of the product is not split
+     */
+    @Transactional
+    @Query(value = """
+            UPDATE product_stock_shard
+               SET quantity = quantity + :quantity
+             WHERE product_id = :productId
+               AND shard = (SELECT shard FROM product_stock_shard WHERE product_id = :productId ORDER BY random() LIMIT 1)
+            RETURNING shard
+            """, nativeQuery = true)
+    Optional<Integer> release(@Param("productId") Integer productId, @Param("quantity") Integer quantity);
+
+    @Query(value = """
+            SELECT product_id AS "productId", CAST(sum(quantity) AS integer) AS "quantity"
+              FROM product_stock_shard
+             WHERE product_id IN (:productIds)
+             GROUP BY product_id
+            """, nativeQuery = true)
+    List<ShardedStock> sumQuantities(@Param("productIds") Collection<Integer> productIds);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM product_stock_shard WHERE product_id = :productId", nativeQuery = true)
+    int deleteByProductId(@Param("productId") Integer productId);
+
+    /**
+     * Splits the quantity evenly between the counters, the first ones getting the remainder.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO product_stock_shard (product_id, shard, quantity)
+            SELECT :productId, shard, :quantity / :shards + CASE WHEN shard < :quantity % :shards THEN 1 ELSE 0 END
+              FROM generate_series(0, :shards - 1) shard
+            """, nativeQuery = true)
+    int insertShards(@Param("productId") Integer productId, @Param("shards") Integer shards, @Param("quantity") Integer quantity);
+
+    interface ShardReservation {
+        long getShards();
+
+        long getCandidates();
+
+        long getReserved();
+    }
+
+    interface ShardedStock {
+        Integer getProductId();
+
+        Integer getQuantity();
+    }
+}
@@ -0,0 +1,107 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.ConflictRetryProperties;
+import com.ecommerce.simple.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Runs a write again when it loses a race against a concurrent one: a stale {@code @Version}, a deadlock or a
+ * serialization failure. Rows are not locked up front for that, so concurrent checkouts of the same product or order
+ * do not wait on each other; the rare loser pays a rerun instead.
+ * <p>
+ * Retries are spread by a randomized exponential backoff, and once {@code conflict-retry.max-attempts} is reached the
+ * conflict is reported as a {@link ConcurrentUpdateException}, a 409. The {@code conflict.retry.calls},
+ * {@code conflict.retry.retries} and {@code conflict.retry.conflicts} counters, by operation, give the retry count and
+ * the conflict rate.
+ * <p>
+ * A transaction can not be run again from inside, so the action runs once only when the caller is already in one.
+ */
+@Slf4j
+@Service
+public class ConflictRetry {
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+
+    public ConflictRetry(TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry,
+                         ConflictRetryProperties conflictRetryProperties) {
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(conflictRetryProperties.maxAttempts(), 1);
+        this.backoffNanos = conflictRetryProperties.backoff().toNanos();
+        this.maxBackoffNanos = conflictRetryProperties.maxBackoff().toNanos();
+    }
+
+    /**
+     * Runs the action in a transaction of its own, again in a new one after a conflict.
+     */
+    public <T> T executeInTransaction(String operation, Supplier<T> action) {
+        return execute(operation, () -> transactionTemplate.execute(status -> action.get()));
+    }
+
+    /**
+     * Runs the action, again after a conflict. The action opens its own transaction.
+     *
+     * @param operation the write, which the metrics are tagged with
+     */
+    public <T> T execute(String operation, Supplier<T> action) {
+        log.trace("[ execute ] operation: {}", operation);
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        counter("conflict.retry.calls", operation).increment();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    counter("conflict.retry.conflicts", operation).increment();
+                    throw new ConcurrentUpdateException(format("Concurrent update conflict, %s gave up after %d attempts.", operation, attempt), e);
+                }
+                counter("conflict.retry.retries", operation).increment();
+                log.debug("{} lost a race ({}), attempt {} of {}", operation, reason(e), attempt, maxAttempts);
+                pause(operation, attempt, e);
+            }
+        }
+    }
+
+    private void pause(String operation, int attempt, ConcurrencyFailureException conflict) {
+        // full jitter: the writers that collided do not collide again at their next attempt
+        long ceiling = Math.min(maxBackoffNanos, backoffNanos << Math.min(attempt - 1, 20));
+        long pauseNanos = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        try {
+            Thread.sleep(pauseNanos / 1_000_000, (int) (pauseNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException(format("Concurrent update conflict, %s interrupted before retrying.", operation), conflict);
+        }
+    }
+
+    private Counter counter(String name, String operation) {
+        return Counter.builder(name)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private static String reason(ConcurrencyFailureException e) {
+        return e instanceof OptimisticLockingFailureException ? "stale version" : e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,112 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.DatabaseBulkheadProperties;
+import com.ecommerce.simple.exception.DatabaseBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Semaphore in front of the connection pool. With virtual threads nothing bounds the requests handled at once, and
+ * past the size of the pool they all waited in it until its connection timeout, holding their memory meanwhile.
+ * <p>
+ * Up to {@code spring.datasource.hikari.maximum-pool-size} less {@code database-bulkhead.reserved-connections}
+ * connections are handed out, so the work let past the bulkhead always finds one left in the pool,
+ * {@code database-bulkhead.max-queued} requests wait for one in arrival order, and a request beyond them, or waiting longer than
+ * {@code database-bulkhead.max-wait}, fails with a {@link DatabaseBusyException}, a 503.
+ * <p>
+ * The {@code database.bulkhead.active} and {@code database.bulkhead.queued} gauges, the {@code database.bulkhead.wait}
+ * timer and the {@code database.bulkhead.rejected} counter give the load and how long it waits.
+ */
+@Service
+public class DatabaseBulkhead {
+
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ThreadLocal<Boolean> unbounded = new ThreadLocal<>();
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public DatabaseBulkhead(MeterRegistry meterRegistry,
+                            DatabaseBulkheadProperties databaseBulkheadProperties,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maximumPoolSize) {
+        int maxConcurrent = Math.max(maximumPoolSize - databaseBulkheadProperties.reservedConnections(), 1);
+        this.maxQueued = Math.max(databaseBulkheadProperties.maxQueued(), 0);
+        this.maxWaitNanos = databaseBulkheadProperties.maxWait().toNanos();
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.waitTimer = meterRegistry.timer("database.bulkhead.wait");
+        this.rejectedCounter = meterRegistry.counter("database.bulkhead.rejected");
+        Gauge.builder("database.bulkhead.active", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .register(meterRegistry);
+        Gauge.builder("database.bulkhead.queued", queued, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a permit, waiting for one when all are taken.
+     *
+     * @return whether a permit was taken, to be given back by {@link #exit()}
+     * @throws DatabaseBusyException when too many requests are waiting already, or none was free in time
+     */
+    public boolean enter() {
+        if (unbounded.get() != null) {
+            return false;
+        }
+        if (permits.tryAcquire()) {
+            return true;
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedCounter.increment();
+            throw new DatabaseBusyException(format("Database busy, %d requests already waiting for a connection.", maxQueued));
+        }
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                rejectedCounter.increment();
+                throw new DatabaseBusyException(format("Database busy, no connection within %d ms.", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)));
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseBusyException("Interrupted while waiting for a connection.");
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void exit() {
+        permits.release();
+    }
+
+    /**
+     * Runs the action without taking permits, for work already accepted that must not be turned away, such as the
+     * order totals of committed order items. The pool itself still bounds it.
+     */
+    public <T> T unbounded(Supplier<T> action) {
+        if (unbounded.get() != null) {
+            return action.get();
+        }
+        unbounded.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            unbounded.remove();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.IdempotencyProperties;
+import com.ecommerce.simple.exception.IdempotencyKeyReusedException;
+import com.ecommerce.simple.model.IdempotencyKey;
+import com.ecommerce.simple.repository.IdempotencyKeyRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Runs a create request once per {@code Idempotency-Key}: the retries of a request get the response of its first
+ * execution back, without touching the products and orders again.
+ * <p>
+ * The responses are kept in a bounded in-memory map, in front of the {@code idempotency_key} table, until their
+ * time to live expires. Concurrent requests with the same key wait for the one in flight instead of running again.
+ * Across instances, the key is stored in the same transaction as the write, so only one of them commits.
+ * <p>
+ * The action runs in a transaction of its own, with or without a key: callers pass their own methods, which the
+ * {@code @Transactional} proxy does not see.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final long ttlSeconds;
+    private final ConcurrentMap<String, CompletableFuture<StoredResponse>> executions;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              IdempotencyProperties idempotencyProperties) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.ttlSeconds = idempotencyProperties.ttl().toSeconds();
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(idempotencyProperties.maximumSize())
+                .expireAfterWrite(idempotencyProperties.ttl())
+                .<String, CompletableFuture<StoredResponse>>build()
+                .asMap();
+    }
+
+    /**
+     * @param idempotencyKey the key sent by the client, the request simply runs when there is none
+     * @param operation      the endpoint, so the same key on another endpoint is another request
+     * @param request        the body, a key sent again with another body is refused
+     * @param responseType   the class the stored response is read back into
+     * @param action         the request itself
+     */
+    public <T> T execute(String idempotencyKey, String operation, Object request, Class<T> responseType, Supplier<T> action) {
+        log.trace("[ execute ] idempotencyKey: {}, operation: {}", idempotencyKey, operation);
+
+        if (idempotencyKey == null) {
+            return transactionTemplate.execute(status -> action.get());
+        }
+
+        String id = hash(operation + " " + idempotencyKey);
+        String requestHash = hash(toJson(request));
+
+        CompletableFuture<StoredResponse> execution = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> previousExecution = executions.putIfAbsent(id, execution);
+
+        StoredResponse storedResponse;
+        if (previousExecution == null) {
+            storedResponse = run(id, requestHash, execution, action);
+        } else {
+            log.debug("Idempotency key {} already used, waiting for its response", idempotencyKey);
+            storedResponse = join(previousExecution);
+        }
+
+        if (!storedResponse.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException(format("Idempotency key '%s' was already used with another request.", idempotencyKey));
+        }
+        return fromJson(storedResponse.response(), responseType);
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval:PT10M}")
+    public void purgeExpiredKeys() {
+        int purged = idempotencyKeyRepository.deleteExpired();
+        log.debug("[ purgeExpiredKeys ] purged: {}", purged);
+    }
+
+    private <T> StoredResponse run(String id, String requestHash, CompletableFuture<StoredResponse> execution, Supplier<T> action) {
+        try {
+            StoredResponse storedResponse = idempotencyKeyRepository.findUnexpiredById(id)
+                    .map(StoredResponse::new)
+                    .orElseGet(() -> runOnce(id, requestHash, action));
+            execution.complete(storedResponse);
+            return storedResponse;
+        } catch (Throwable e) {
+            // failures are not replayed, errors included: the next retry runs the request again instead of waiting
+            executions.remove(id, execution);
+            execution.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private <T> StoredResponse runOnce(String id, String requestHash, Supplier<T> action) {
+        try {
+            return transactionTemplate.execute(status -> {
+                String response = toJson(action.get());
+                if (idempotencyKeyRepository.insert(id, requestHash, response, ttlSeconds).isEmpty()) {
+                    throw new KeyTakenException();
+                }
+                return new StoredResponse(requestHash, response);
+            });
+        } catch (KeyTakenException e) {
+            // another instance ran the same request first, this execution has been rolled back
+            return idempotencyKeyRepository.findUnexpiredById(id)
+                    .map(StoredResponse::new)
+                    .orElseThrow(() -> new IllegalStateException("Idempotency key taken, but its response is gone."));
+        }
+    }
+
+    private static StoredResponse join(CompletableFuture<StoredResponse> execution) {
+        try {
+            return execution.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, String response) {
+        StoredResponse(IdempotencyKey idempotencyKey) {
+            this(idempotencyKey.getRequestHash(), idempotencyKey.getResponse());
+        }
+    }
+
+    private static class KeyTakenException extends RuntimeException {
+        KeyTakenException() {
+            super(null, null, false, false);
+        }
+    }
+}
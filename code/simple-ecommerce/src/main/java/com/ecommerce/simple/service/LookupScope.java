@@ -0,0 +1,100 @@
+package com.ecommerce.simple.service;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent lookups at once, each on its own virtual thread, so a request waits for the slowest of them
+ * instead of their sum. Shaped after {@code StructuredTaskScope.ShutdownOnFailure}, still a preview in Java 21: the
+ * lookups are forked, then joined together.
+ * <pre>
+ * try (LookupScope scope = new LookupScope()) {
+ *     Supplier&lt;Product&gt; product = scope.fork(() -&gt; getProduct(productId));
+ *     Supplier&lt;Order&gt; order = scope.fork(() -&gt; getOrder(orderId));
+ *     scope.join();
+ *     ...
+ * }
+ * </pre>
+ * When several lookups fail, the one forked first is thrown as is, whichever fails first, so a request gets the same
+ * error as when its lookups ran one after the other. A failing lookup interrupts the ones forked after it, their
+ * results can no longer be used, and leaves the ones forked before it to end.
+ * <p>
+ * The lookups run outside the transaction of the caller, each on a pooled connection of its own, so they are only
+ * forked outside of one: a transaction waiting on connections held by the others could exhaust the pool.
+ */
+public class LookupScope implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> lookups = new CopyOnWriteArrayList<>();
+    private final AtomicInteger firstFailed = new AtomicInteger(Integer.MAX_VALUE);
+
+    /**
+     * Starts the lookup.
+     *
+     * @return its result, once {@link #join()} returned
+     */
+    public <T> Supplier<T> fork(Supplier<T> lookup) {
+        int index = lookups.size();
+        Future<T> result = executor.submit(() -> {
+            try {
+                return lookup.get();
+            } catch (RuntimeException | Error e) {
+                failed(index);
+                throw e;
+            }
+        });
+        lookups.add(result);
+        if (index > firstFailed.get()) {
+            result.cancel(true);
+        }
+        return result::resultNow;
+    }
+
+    private void failed(int index) {
+        int first = firstFailed.accumulateAndGet(index, Math::min);
+        for (int i = first + 1; i < lookups.size(); i++) {
+            lookups.get(i).cancel(true);
+        }
+    }
+
+    /**
+     * Waits for all the lookups, or for the first one in fork order to fail.
+     *
+     * @throws RuntimeException the exception of the first lookup in fork order to fail
+     */
+    public void join() {
+        for (Future<?> lookup : lookups) {
+            try {
+                lookup.get();
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                switch (e.getCause()) {
+                    case RuntimeException cause -> throw cause;
+                    case Error cause -> throw cause;
+                    default -> throw new CompletionException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the lookups.");
+            }
+        }
+    }
+
+    /**
+     * Interrupts the lookups still running, and waits for them to end.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        executor.close();
+    }
+}
@@ -0,0 +1,94 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.MissingIdCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the ids of products, orders and order items found missing, so the clients asking for them again and
+ * again are answered 404 without a query. Bounded by {@code missing-id-cache.maximum-size} and
+ * {@code missing-id-cache.ttl}, its hits and misses are published as the {@code cache.*} metrics of
+ * {@code missing-ids}.
+ * <p>
+ * Ids are given by sequences, so a missing id is mostly one not given yet: the services tell the ids they create with
+ * {@link #created(Class, Integer)}, forgotten at once and again when their transaction completes. A lookup that
+ * overlapped a creation of its entity is not remembered, it could have missed a row committed meanwhile.
+ */
+@Slf4j
+@Service
+public class MissingIdCache {
+
+    private final Cache<Key, Boolean> missingIds;
+    // bumped by every creation, per entity
+    private final ConcurrentMap<Class<?>, AtomicLong> creations = new ConcurrentHashMap<>();
+
+    public MissingIdCache(MeterRegistry meterRegistry, MissingIdCacheProperties missingIdCacheProperties) {
+        this.missingIds = Caffeine.newBuilder()
+                .maximumSize(missingIdCacheProperties.maximumSize())
+                .expireAfterWrite(missingIdCacheProperties.ttl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, missingIds, "missing-ids");
+    }
+
+    /**
+     * @return what the lookup found, empty without running it when the id is known to be missing
+     */
+    public <T> Optional<T> find(Class<?> entity, Integer id, Supplier<Optional<T>> lookup) {
+        Key key = new Key(entity, id);
+        if (missingIds.getIfPresent(key) != null) {
+            log.trace("[ find ] {} of id {} known to be missing", entity.getSimpleName(), id);
+            return Optional.empty();
+        }
+
+        long creationsBefore = creations(entity).get();
+        Optional<T> found = lookup.get();
+        if (found.isEmpty()) {
+            missingIds.put(key, Boolean.TRUE);
+            // checked once put, a creation forgetting the id in between would be undone otherwise
+            if (creations(entity).get() != creationsBefore) {
+                missingIds.invalidate(key);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Forgets the id as missing, once more when the current transaction completes, its row being visible only then.
+     */
+    public void created(Class<?> entity, Integer id) {
+        forget(new Key(entity, id));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    forget(new Key(entity, id));
+                }
+            });
+        }
+    }
+
+    private void forget(Key key) {
+        creations(key.entity()).incrementAndGet();
+        missingIds.invalidate(key);
+    }
+
+    private AtomicLong creations(Class<?> entity) {
+        return creations.computeIfAbsent(entity, created -> new AtomicLong());
+    }
+
+    private record Key(Class<?> entity, Integer id) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.ecommerce.simple.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes the rows of a repository stream as newline delimited JSON while they are read from the database cursor.
+ */
+@Slf4j
+@Component
+public class NdjsonStreamer {
+
+    private static final int NEW_LINE = '\n';
+    // rows written between two flushes, so the client receives them while the cursor is still read
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public NdjsonStreamer(ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * The stream is opened only when the response body is written, inside its own read-only transaction:
+     * the PostgreSQL driver only uses a server side cursor (and the fetch size) when auto-commit is off.
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(Supplier<Stream<T>> rowsSupplier) {
+        StreamingResponseBody streamingResponseBody = outputStream -> {
+            AtomicLong rowCount = new AtomicLong();
+
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<T> rows = rowsSupplier.get()) {
+                    rows.forEach(row -> {
+                        try {
+                            outputStream.write(objectMapper.writeValueAsBytes(row));
+                            outputStream.write(NEW_LINE);
+                            if (rowCount.incrementAndGet() % FLUSH_EVERY_ROWS == 0) {
+                                outputStream.flush();
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            });
+            outputStream.flush();
+            log.debug("[ stream ] rows written: {}", rowCount.get());
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(streamingResponseBody);
+    }
+}
@@ -1,32 +1,43 @@
 package com.ecommerce.simple.service;
 
+import com.ecommerce.simple.dto.OrderItemBulkResponseDTO;
 import com.ecommerce.simple.dto.OrderItemRequestDTO;
 import com.ecommerce.simple.dto.OrderItemResponseDTO;
 import com.ecommerce.simple.exception.DuplicateKeyValueException;
 import com.ecommerce.simple.exception.MandatoryFieldMissingException;
 import com.ecommerce.simple.exception.NoProductLeftOverException;
 import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.mapper.OrderItemMapper;
+import com.ecommerce.simple.model.Error;
 import com.ecommerce.simple.model.Order;
 import com.ecommerce.simple.model.OrderItem;
 import com.ecommerce.simple.model.Product;
 import com.ecommerce.simple.repository.OrderItemRepository;
 import com.ecommerce.simple.repository.OrderRepository;
 import com.ecommerce.simple.repository.ProductRepository;
+import com.ecommerce.simple.service.ProductCache.CachedProduct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
-import org.modelmapper.record.RecordModule;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -35,21 +46,35 @@ public class OrderItemService {
 
     private final OrderItemRepository orderItemRepository;
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
     private final OrderRepository orderRepository;
-
-    private static final ModelMapper modelMapper = new ModelMapper();
-
-    static {
-        modelMapper.registerModule(new RecordModule());
+    private final NdjsonStreamer ndjsonStreamer;
+    private final OrderItemMapper orderItemMapper;
+    private final IdempotencyService idempotencyService;
+    private final ReservationService reservationService;
+    private final ProductStockService productStockService;
+    private final ConflictRetry conflictRetry;
+    private final OrderTotalCoalescer orderTotalCoalescer;
+    private final MissingIdCache missingIdCache;
+
+    /**
+     * Saves the order item once per idempotency key, a retry gets the order item saved the first time.
+     */
+    public OrderItemResponseDTO saveOrderItemOnce(OrderItemRequestDTO orderItemRequestDTO, String idempotencyKey) {
+        log.debug("[ saveOrderItemOnce ] orderItemRequestDTO: {}, idempotencyKey: {}", orderItemRequestDTO, idempotencyKey);
+
+        // a retry runs the whole idempotent execution again, which opens its own transaction
+        return conflictRetry.execute("saveOrderItem", () -> idempotencyService.execute(idempotencyKey, "POST /api/order-items",
+                orderItemRequestDTO, OrderItemResponseDTO.class, () -> saveOrderItem(orderItemRequestDTO, null)));
     }
 
     public OrderItemResponseDTO saveOrderItem(OrderItemRequestDTO orderItemRequestDTO) {
         log.debug("[ saveOrderItem ] orderItemRequestDTO: {}", orderItemRequestDTO);
 
-        return saveOrderItem(orderItemRequestDTO, null);
+        return conflictRetry.executeInTransaction("saveOrderItem", () -> saveOrderItem(orderItemRequestDTO, null));
     }
 
-    public OrderItemResponseDTO saveOrderItem(OrderItemRequestDTO orderItemRequestDTO, Integer orderItemId) {
+    private OrderItemResponseDTO saveOrderItem(OrderItemRequestDTO orderItemRequestDTO, Integer orderItemId) {
         log.debug("[ saveOrderItem ] orderItemRequestDTO: {}, orderItemId: {}", orderItemRequestDTO, orderItemId);
 
         checksMandatoryFields(orderItemRequestDTO);
@@ -57,56 +82,182 @@ public class OrderItemService {
         OrderItem orderItem = createOrderItem(orderItemRequestDTO, orderItemId);
         log.debug("orderItem: {}", orderItem);
 
-        checkIfTheOrderItemExists(orderItem);
-
-        Product product = getProduct(orderItem.getProductId());
-        log.debug("product: {}", product);
+        Product productWithReducedQuantity = reduceProductQuantity(orderItem.getProductId(), orderItem.getQuantity());
+        log.debug("Product after reduce quantity: {}", productWithReducedQuantity);
 
-        checkProductLeftOver(product);
+        updateTotalAmount(orderItem, productWithReducedQuantity);
 
-        OrderItem orderItemCreated = orderItemRepository.save(orderItem);
+        OrderItem orderItemCreated = orderItemId == null
+                ? orderItemRepository.upsert(orderItem.getOrderId(), orderItem.getProductId(), orderItem.getQuantity(), orderItem.getReservedUntil())
+                        .orElseThrow(() -> holdAndSaleMixed(orderItem))
+                : orderItemRepository.save(orderItem);
         log.debug("orderItemCreated: {}", orderItemCreated);
 
-        Order order = updateTotalAmount(orderItem, product);
-        log.debug("Order after update total amount: {}", order);
+        missingIdCache.created(OrderItem.class, orderItemCreated.getId());
 
-        Product productWithReducedQuantity = reduceProductQuantity(product);
-        log.debug("Product after reduce quantity: {}", productWithReducedQuantity);
+        reservationService.expire(List.of(orderItemCreated));
 
-        OrderItemResponseDTO orderItemResponseDTO = createOrderItemResponse(orderItemCreated, productWithReducedQuantity);
+        OrderItemResponseDTO orderItemResponseDTO = orderItemMapper.toOrderItemResponseDTO(orderItemCreated, productWithReducedQuantity);
         log.debug("orderItemResponseDTO: {}", orderItemResponseDTO);
 
         return orderItemResponseDTO;
     }
 
-    public List<OrderItemResponseDTO> getOrderItems() {
-        log.debug("[ getOrderItems ]");
+    public List<OrderItemBulkResponseDTO> saveOrderItems(List<OrderItemRequestDTO> orderItemRequestDTOList) {
+        log.debug("[ saveOrderItems ] orderItemRequestDTOList: {}", orderItemRequestDTOList);
+
+        return conflictRetry.executeInTransaction("saveOrderItems", () -> saveOrderItemLines(orderItemRequestDTOList));
+    }
 
-        List<OrderItem> allOrderItems = orderItemRepository.findAll();
-        log.debug("allOrderItems: {}", allOrderItems);
+    private List<OrderItemBulkResponseDTO> saveOrderItemLines(List<OrderItemRequestDTO> orderItemRequestDTOList) {
+        int lines = orderItemRequestDTOList.size();
+        OrderItem[] orderItems = new OrderItem[lines];
+        OrderItemBulkResponseDTO[] responses = new OrderItemBulkResponseDTO[lines];
+
+        for (int line = 0; line < lines; line++) {
+            OrderItemRequestDTO orderItemRequestDTO = orderItemRequestDTOList.get(line);
+            try {
+                checksMandatoryFields(orderItemRequestDTO);
+                orderItems[line] = createOrderItem(orderItemRequestDTO, null);
+            } catch (MandatoryFieldMissingException e) {
+                responses[line] = createOrderItemBulkFailure(line, e);
+            }
+        }
 
-        if (CollectionUtils.isEmpty(allOrderItems)) {
-            throw new NotFoundException("No order items found.");
+        // a single query for each table instead of one per line
+        Set<Integer> productIds = new HashSet<>();
+        Set<Integer> orderIds = new HashSet<>();
+        for (OrderItem orderItem : orderItems) {
+            if (orderItem != null) {
+                productIds.add(orderItem.getProductId());
+                orderIds.add(orderItem.getOrderId());
+            }
         }
+        Map<Integer, Product> productMap = productRepository.findAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Set<Integer> existingOrderIds = orderRepository.findAllById(orderIds).stream()
+                .map(Order::getId)
+                .collect(Collectors.toSet());
+        log.debug("productMap: {}, existingOrderIds: {}", productMap, existingOrderIds);
+
+        List<Integer> linesToReserve = new ArrayList<>();
+        for (int line = 0; line < lines; line++) {
+            OrderItem orderItem = orderItems[line];
+            if (orderItem == null) {
+                continue;
+            }
+            try {
+                checksBulkOrderItem(orderItem, productMap, existingOrderIds);
+                linesToReserve.add(line);
+            } catch (NotFoundException e) {
+                responses[line] = createOrderItemBulkFailure(line, e);
+            }
+        }
+
+        // a hold and a sale of the same product are never added up, whether the order item exists or is in the request
+        Map<Map.Entry<Integer, Integer>, Boolean> holdByKey = new HashMap<>();
+        orderItemRepository.findByOrderIdIn(linesToReserve.stream().map(line -> orderItems[line].getOrderId()).distinct().toList())
+                .forEach(orderItem -> holdByKey.put(orderProductKey(orderItem), orderItem.getReservedUntil() != null));
+        linesToReserve.removeIf(line -> {
+            OrderItem orderItem = orderItems[line];
+            Boolean hold = holdByKey.putIfAbsent(orderProductKey(orderItem), orderItem.getReservedUntil() != null);
+            if (hold != null && hold != (orderItem.getReservedUntil() != null)) {
+                responses[line] = createOrderItemBulkFailure(line, holdAndSaleMixed(orderItem));
+                return true;
+            }
+            return false;
+        });
+
+        int[] reservedCounts = reserveBulkQuantities(linesToReserve.stream().map(line -> orderItems[line]).toList(), productMap);
+        log.debug("reservedCounts: {}", reservedCounts);
+
+        Map<Integer, Integer> leftOverMap = productMap.values().stream()
+                .collect(Collectors.toMap(Product::getId, Product::getQuantity));
+        List<Integer> linesToSave = new ArrayList<>();
+        for (int i = 0; i < reservedCounts.length; i++) {
+            Integer line = linesToReserve.get(i);
+            Integer productId = orderItems[line].getProductId();
+            if (reservedCounts[i] > 0) {
+                leftOverMap.merge(productId, -orderItems[line].getQuantity(), Integer::sum);
+                linesToSave.add(line);
+            } else {
+                NoProductLeftOverException e = new NoProductLeftOverException(format("There is no left over products, quantity: %d", Math.max(leftOverMap.get(productId), 0)));
+                responses[line] = createOrderItemBulkFailure(line, e);
+            }
+        }
+
+        // the lines of the same order and product are added up, like the order items they are added to
+        Map<Map.Entry<Integer, Integer>, OrderItem> orderItemByKey = new LinkedHashMap<>();
+        for (Integer line : linesToSave) {
+            orderItemByKey.merge(orderProductKey(orderItems[line]), orderItems[line], OrderItemService::addOrderItems);
+        }
+        List<OrderItem> orderItemsToUpsert = List.copyOf(orderItemByKey.values());
+        int[] upsertCounts = orderItemRepository.upsertAll(orderItemsToUpsert);
+        log.debug("upsertCounts: {}", upsertCounts);
+
+        Map<Map.Entry<Integer, Integer>, OrderItem> orderItemsSaved = orderItemRepository.findByOrderIdIn(orderItemByKey.values().stream().map(OrderItem::getOrderId).toList()).stream()
+                .filter(orderItem -> orderItemByKey.containsKey(orderProductKey(orderItem)))
+                .collect(Collectors.toMap(OrderItemService::orderProductKey, Function.identity()));
+        log.debug("orderItemsSaved: {}", orderItemsSaved);
+
+        // the batched counts are not reliable once the driver rewrites the batch, the rows read back are compared instead
+        for (OrderItem orderItem : orderItemsToUpsert) {
+            OrderItem orderItemSaved = orderItemsSaved.get(orderProductKey(orderItem));
+            if (orderItemSaved == null || (orderItemSaved.getReservedUntil() != null) != (orderItem.getReservedUntil() != null)) {
+                // an order item of the other kind was added concurrently since checked, the whole request is refused
+                throw holdAndSaleMixed(orderItem);
+            }
+        }
+
+        orderItemsSaved.values().forEach(orderItem -> missingIdCache.created(OrderItem.class, orderItem.getId()));
+
+        reservationService.expire(orderItemsSaved.values());
 
-        List<OrderItemResponseDTO> orderItemResponseDTOList = createOrderItemList(allOrderItems);
+        // one total amount update per order, whatever the number of lines
+        Map<Integer, Double> amountByOrderId = orderItemByKey.values().stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId, Collectors.summingDouble(orderItem -> amountOf(orderItem, productMap.get(orderItem.getProductId())))));
+        amountByOrderId.forEach(orderTotalCoalescer::add);
+
+        for (Integer line : linesToSave) {
+            OrderItem orderItem = orderItemsSaved.get(orderProductKey(orderItems[line]));
+            responses[line] = OrderItemBulkResponseDTO.builder()
+                    .line(line)
+                    .success(true)
+                    .orderItem(orderItemMapper.toOrderItemResponseDTO(orderItem, productMap.get(orderItem.getProductId())))
+                    .build();
+        }
+
+        List<OrderItemBulkResponseDTO> orderItemBulkResponseDTOList = Arrays.asList(responses);
+        log.debug("orderItemBulkResponseDTOList: {}", orderItemBulkResponseDTOList);
+
+        return orderItemBulkResponseDTOList;
+    }
+
+    public ResponseEntity<List<OrderItemResponseDTO>> getOrderItems(Integer after, Integer size) {
+        log.debug("[ getOrderItems ] after: {}, size: {}", after, size);
+
+        int pageSize = Pagination.pageSize(size);
+        List<OrderItemResponseDTO> orderItemResponseDTOList = orderItemRepository.findResponsesByIdGreaterThan(Pagination.cursor(after), Pagination.limit(pageSize));
         log.debug("orderItemResponseDTOList: {}", orderItemResponseDTOList);
 
-        return orderItemResponseDTOList;
+        if (CollectionUtils.isEmpty(orderItemResponseDTOList)) {
+            throw new NotFoundException("No order items found.");
+        }
+
+        return Pagination.createPageResponse(orderItemResponseDTOList, pageSize, OrderItemResponseDTO::getId);
+    }
+
+    public ResponseEntity<StreamingResponseBody> exportOrderItems() {
+        log.debug("[ exportOrderItems ]");
+
+        return ndjsonStreamer.stream(orderItemRepository::streamAll);
     }
 
     public OrderItemResponseDTO getOrderItem(Integer id) {
         log.debug("[ getOrderItem ] id: {}", id);
 
-        OrderItem orderItem = orderItemRepository
-                .findById(id)
+        OrderItemResponseDTO orderItemResponseDTO = missingIdCache.find(OrderItem.class, id, () -> orderItemRepository.findResponseById(id))
                 .orElseThrow(() -> new NotFoundException(format("Order item of id %d not found.", id)));
-        log.debug("orderItem: {}", orderItem);
-
-        Product product = getProduct(orderItem.getProductId());
-        log.debug("product: {}", product);
-
-        OrderItemResponseDTO orderItemResponseDTO = createOrderItemResponse(orderItem, product);
         log.debug("orderItemResponseDTO: {}", orderItemResponseDTO);
 
         return orderItemResponseDTO;
@@ -115,34 +266,38 @@ public class OrderItemService {
     public OrderItemResponseDTO updateOrderItem(Integer id, OrderItem orderItem) {
         log.debug("[ updateOrderItem ] id: {}, orderItem: {}", id, orderItem);
 
-        // checks if the item order exist with such id
+        if (orderItem.getOrderId() != null && orderItem.getProductId() != null) {
+            // before the transaction, the lookups run on connections of their own
+            checksExistenceOfRecords(id, orderItem);
+        }
+
+        return conflictRetry.executeInTransaction("updateOrderItem", () -> replaceOrderItem(id, orderItem));
+    }
+
+    private OrderItemResponseDTO replaceOrderItem(Integer id, OrderItem orderItem) {
+        // locks the order item, so concurrent updates and deletes of it are applied one after the other
+        OrderItem lockedOrderItem = orderItemRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new NotFoundException(format("Order item of id %d not found.", id)));
+
         OrderItemResponseDTO previousOrderItem = getOrderItem(id);
         log.debug("previousOrderItem: {}", previousOrderItem);
 
         checksMandatoryFields(orderItem);
-        checksExistenceOfForeignKeyRecords(orderItem);
-
-        // checks if product and order were disassociated
-        boolean orderRemovedFromOrderItem = !Objects.equals(orderItem.getOrderId(), previousOrderItem.getOrderId());
-        boolean productRemovedFromOrderItem = !Objects.equals(orderItem.getProductId(), previousOrderItem.getProductId());
 
-        if (orderRemovedFromOrderItem || productRemovedFromOrderItem) {
-            Product previousProduct = getProduct(previousOrderItem.getProductId());
-            log.debug("previousProduct: {}", previousProduct);
+        // saving the order item below reserves its product again, even when only the order or the quantity changed
+        removeProductValueFromOrderTotalAmount(previousOrderItem.getOrderId(), previousOrderItem.getProductPrice() * previousOrderItem.getQuantity());
 
-            Order orderWithTotalAmountUpdated = removeProductValueFromOrderTotalAmount(previousOrderItem, previousProduct);
-            log.debug("orderWithTotalAmountUpdated: {}", orderWithTotalAmountUpdated);
-
-            if (productRemovedFromOrderItem) {
-                Product productWithIncreasedQuantity = increaseProductQuantity(previousProduct);
-                log.debug("productWithIncreasedQuantity: {}", productWithIncreasedQuantity);
-            }
-        }
+        Product productWithIncreasedQuantity = increaseProductQuantity(previousOrderItem.getProductId(), previousOrderItem.getQuantity());
+        log.debug("productWithIncreasedQuantity: {}", productWithIncreasedQuantity);
 
         // ensures that item order has the correct id
         orderItem.setId(id);
 
-        OrderItemResponseDTO orderItemResponseDTUpdated = saveOrderItem(modelMapper.map(orderItem, OrderItemRequestDTO.class), id);
+        OrderItemRequestDTO orderItemRequestDTO = orderItemMapper.toOrderItemRequestDTO(orderItem);
+        // a hold stays a hold, for the whole time to live again
+        orderItemRequestDTO.setHold(lockedOrderItem.getReservedUntil() != null);
+
+        OrderItemResponseDTO orderItemResponseDTUpdated = saveOrderItem(orderItemRequestDTO, id);
         log.debug("orderItemResponseDTUpdated: {}", orderItemResponseDTUpdated);
 
         return orderItemResponseDTUpdated;
@@ -151,11 +306,19 @@ public class OrderItemService {
     public ResponseEntity<Void> deleteOrderItem(Integer id) {
         log.debug("[ deleteOrderItem ] id: {}", id);
 
-        // checks if the order item exist with such id
-        getOrderItem(id);
+        return conflictRetry.executeInTransaction("deleteOrderItem", () -> removeOrderItem(id));
+    }
+
+    private ResponseEntity<Void> removeOrderItem(Integer id) {
+        // only one of concurrent deletes gets the order item back, so its product and order are updated once
+        OrderItem orderItemDeleted = orderItemRepository.deleteReturningById(id)
+                .orElseThrow(() -> new NotFoundException(format("Order item of id %d not found.", id)));
+        log.debug("Order item deleted: {}", orderItemDeleted);
 
-        orderItemRepository.deleteById(id);
-        log.debug("Order item deleted: {}", id);
+        Product productWithIncreasedQuantity = increaseProductQuantity(orderItemDeleted.getProductId(), orderItemDeleted.getQuantity());
+        log.debug("productWithIncreasedQuantity: {}", productWithIncreasedQuantity);
+
+        removeProductValueFromOrderTotalAmount(orderItemDeleted.getOrderId(), amountOf(orderItemDeleted, productWithIncreasedQuantity));
 
         ResponseEntity<Void> responseEntity = ResponseEntity.noContent().build();
         log.debug("responseEntity: {}", responseEntity);
@@ -163,21 +326,39 @@ public class OrderItemService {
         return responseEntity;
     }
 
-    private void checksExistenceOfForeignKeyRecords(OrderItem orderItem) {
-        getProduct(orderItem.getProductId());
-        getOrder(orderItem.getOrderId());
+    /**
+     * Looks up the order item first, so a missing one is reported ahead of a missing product or order, as the
+     * transaction replacing it would.
+     */
+    private void checksExistenceOfRecords(Integer id, OrderItem orderItem) {
+        try (LookupScope scope = new LookupScope()) {
+            scope.fork(() -> getOrderItemId(id));
+            scope.fork(() -> getProduct(orderItem.getProductId()));
+            scope.fork(() -> getOrder(orderItem.getOrderId()));
+            scope.join();
+        }
     }
 
     private static void checksMandatoryFields(OrderItemRequestDTO orderItemRequestDTO) {
         log.trace("[ checksMandatoryFields ] orderItemRequestDTO: {}", orderItemRequestDTO);
 
+        checksMandatoryFields(orderItemRequestDTO.getOrderId(), orderItemRequestDTO.getProductId(), orderItemRequestDTO.getQuantity());
+    }
+
+    private static void checksMandatoryFields(OrderItem orderItem) {
+        log.trace("[ checksMandatoryFields ] orderItem: {}", orderItem);
+
+        checksMandatoryFields(orderItem.getOrderId(), orderItem.getProductId(), orderItem.getQuantity());
+    }
+
+    private static void checksMandatoryFields(Integer orderId, Integer productId, Integer quantity) {
         StringBuilder message = new StringBuilder();
 
-        if (orderItemRequestDTO.getOrderId() == null) {
+        if (orderId == null) {
             message.append("[")
                     .append("orderId is mandatory");
         }
-        if (orderItemRequestDTO.getProductId() == null) {
+        if (productId == null) {
             if (message.isEmpty()) {
                 message.append("[");
             } else {
@@ -185,119 +366,153 @@ public class OrderItemService {
             }
             message.append("productId is mandatory");
         }
+        if (quantity != null && quantity < 1) {
+            if (message.isEmpty()) {
+                message.append("[");
+            } else {
+                message.append(", ");
+            }
+            message.append("quantity must be positive");
+        }
         if (!message.isEmpty()) {
             message.append("]");
             throw new MandatoryFieldMissingException(message.toString());
         }
     }
 
-    private void checksMandatoryFields(OrderItem orderItem) {
-        OrderItemRequestDTO orderItemRequestDTO = modelMapper.map(orderItem, OrderItemRequestDTO.class);
-        checksMandatoryFields(orderItemRequestDTO);
+    private void removeProductValueFromOrderTotalAmount(Integer orderId, Double amount) {
+        log.trace("[ removeProductValueFromOrderTotalAmount ] orderId: {}, amount: {}", orderId, amount);
+
+        orderTotalCoalescer.add(orderId, -amount);
     }
 
-    private Order removeProductValueFromOrderTotalAmount(OrderItemResponseDTO orderItemResponseDTO, Product productAbandoned) {
-        log.trace("[ removeProductValueFromOrderTotalAmount ] orderItemResponseDTO: {}, productAbandoned: {}", orderItemResponseDTO, productAbandoned);
+    private static void checksBulkOrderItem(OrderItem orderItem,
+                                            Map<Integer, Product> productMap,
+                                            Set<Integer> existingOrderIds) {
+        log.trace("[ checksBulkOrderItem ] orderItem: {}", orderItem);
 
-        Order order = getOrder(orderItemResponseDTO.getOrderId());
-        order.setTotalAmount(order.getTotalAmount() - productAbandoned.getPrice());
-        return orderRepository.save(order);
+        Integer productId = orderItem.getProductId();
+        Integer orderId = orderItem.getOrderId();
+        if (!productMap.containsKey(productId)) {
+            throw new NotFoundException(format("Product of id %d not found.", productId));
+        }
+        if (!existingOrderIds.contains(orderId)) {
+            throw new NotFoundException(format("Order of id %d not found.", orderId));
+        }
     }
 
-    private static OrderItem createOrderItem(OrderItemRequestDTO orderItemRequestDTO, Integer orderItemId) {
-        log.trace("[ createOrderItem ] orderItemRequestDTO: {}, orderItemId: {}", orderItemRequestDTO, orderItemId);
+    private static DuplicateKeyValueException holdAndSaleMixed(OrderItem orderItem) {
+        return new DuplicateKeyValueException(format("Order item already exists for order: '%d' and product: '%d' as a %s, a %s can not be added to it.",
+                orderItem.getOrderId(), orderItem.getProductId(),
+                orderItem.getReservedUntil() == null ? "hold" : "sale",
+                orderItem.getReservedUntil() == null ? "sale" : "hold"));
+    }
 
+    private static Map.Entry<Integer, Integer> orderProductKey(OrderItem orderItem) {
+        return Map.entry(orderItem.getOrderId(), orderItem.getProductId());
+    }
+
+    /**
+     * Adds the second order item to the first one, as {@link OrderItemRepository#UPSERT_ORDER_ITEM} does.
+     */
+    private static OrderItem addOrderItems(OrderItem orderItem, OrderItem addedOrderItem) {
+        Instant reservedUntil = orderItem.getReservedUntil();
+        if (reservedUntil != null && addedOrderItem.getReservedUntil() != null && addedOrderItem.getReservedUntil().isAfter(reservedUntil)) {
+            reservedUntil = addedOrderItem.getReservedUntil();
+        }
         return OrderItem.builder()
-                .id(orderItemId)
-                .orderId(orderItemRequestDTO.getOrderId())
-                .productId(orderItemRequestDTO.getProductId())
+                .orderId(orderItem.getOrderId())
+                .productId(orderItem.getProductId())
+                .quantity(orderItem.getQuantity() + addedOrderItem.getQuantity())
+                .reservedUntil(reservedUntil)
                 .build();
     }
 
-    private List<OrderItemResponseDTO> createOrderItemList(List<OrderItem> allOrderItems) {
-        log.trace("[ createOrderItemList ] allOrderItems: {}", allOrderItems);
-
-        Map<Integer, Product> productMap = getProductMap(allOrderItems);
-
-        return allOrderItems.stream()
-                .map(orderItem -> {
-                    Product product = productMap.get(orderItem.getProductId());
-
-                    return OrderItemResponseDTO.builder()
-                            .id(orderItem.getId())
-                            .orderId(orderItem.getOrderId())
-                            .productId(orderItem.getProductId())
-                            .productName(product.getName())
-                            .productDescription(product.getDescription())
-                            .productPrice(product.getPrice())
-                            .build();
-                })
-                .collect(Collectors.toList());
+    private static Double amountOf(OrderItem orderItem, Product product) {
+        return product.getPrice() * orderItem.getQuantity();
     }
 
-    private Map<Integer, Product> getProductMap(List<OrderItem> allOrderItems) {
-        log.trace("[ getProductMap ] allOrderItems: {}", allOrderItems);
+    private static OrderItemBulkResponseDTO createOrderItemBulkFailure(Integer line, RuntimeException exception) {
+        log.trace("[ createOrderItemBulkFailure ] line: {}, exception: {}", line, exception.getMessage());
 
-        List<Integer> productIds = allOrderItems.stream()
-                .map(OrderItem::getProductId)
-                .toList();
-        List<Product> productList = productRepository.findAllById(productIds);
-        return productList.stream()
-                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return OrderItemBulkResponseDTO.builder()
+                .line(line)
+                .success(false)
+                .error(new Error(exception instanceof NotFoundException ? NOT_FOUND : BAD_REQUEST, exception))
+                .build();
     }
 
-    private void checkIfTheOrderItemExists(OrderItem orderItem) {
-        log.trace("[ checkIfTheOrderItemExists ] orderItem: {}", orderItem);
+    private OrderItem createOrderItem(OrderItemRequestDTO orderItemRequestDTO, Integer orderItemId) {
+        log.trace("[ createOrderItem ] orderItemRequestDTO: {}, orderItemId: {}", orderItemRequestDTO, orderItemId);
 
-        orderItemRepository.findByProductIdAndOrderId(orderItem.getProductId(), orderItem.getOrderId())
-                .ifPresent(p -> {
-                    throw new DuplicateKeyValueException(format("Order item already exists for order: '%d' and product: '%d'.", p.getOrderId(), p.getProductId()));
-                });
+        return OrderItem.builder()
+                .id(orderItemId)
+                .orderId(orderItemRequestDTO.getOrderId())
+                .productId(orderItemRequestDTO.getProductId())
+                .quantity(orderItemRequestDTO.getQuantity() == null ? 1 : orderItemRequestDTO.getQuantity())
+                .reservedUntil(Boolean.TRUE.equals(orderItemRequestDTO.getHold()) ? reservationService.holdUntil() : null)
+                .build();
     }
 
-    private static void checkProductLeftOver(Product product) {
-        log.trace("[ checkProductLeftOver ] product: {}", product);
+    private void updateTotalAmount(OrderItem orderItem, Product productFound) {
+        log.trace("[ updateTotalAmount ] orderItem: {}, productFound: {}", orderItem, productFound);
 
-        Integer quantity = product.getQuantity();
-        if (quantity <= 0) {
-            throw new NoProductLeftOverException(format("There is no left over products, quantity: %d", quantity));
-        }
+        orderTotalCoalescer.add(orderItem.getOrderId(), amountOf(orderItem, productFound));
     }
 
-    private Order updateTotalAmount(OrderItem orderItem, Product productFound) {
-        log.trace("[ updateTotalAmount ] orderItem: {}, productFound: {}", orderItem, productFound);
+    private Product reduceProductQuantity(Integer productId, Integer quantity) {
+        log.trace("[ reduceProductQuantity ] productId: {}, quantity: {}", productId, quantity);
 
-        Order order = getOrder(orderItem.getOrderId());
-        Double totalAmount = order.getTotalAmount() + productFound.getPrice();
-        order.setTotalAmount(totalAmount);
-        return orderRepository.save(order);
+        return productStockService.reserve(productId, quantity)
+                .orElseThrow(() -> {
+                    // nothing was updated: either the product does not exist or there is no left over
+                    CachedProduct product = getProduct(productId);
+                    return new NoProductLeftOverException(format("There is no left over products, quantity: %d", productStockService.quantityOf(product)));
+                });
     }
 
-    private Product reduceProductQuantity(Product product) {
-        log.trace("[ reduceProductQuantity ] product: {}", product);
+    private Product increaseProductQuantity(Integer productId, Integer quantity) {
+        log.trace("[ increaseProductQuantity ] productId: {}, quantity: {}", productId, quantity);
 
-        product.setQuantity(product.getQuantity() - 1);
-        return productRepository.save(product);
+        // the cached product is shared between requests, so the stock is changed in the database only
+        return productStockService.release(productId, quantity)
+                .orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", productId)));
     }
 
-    private static OrderItemResponseDTO createOrderItemResponse(OrderItem orderItem, Product product) {
-        log.trace("[ createOrderItemResponse ] orderItem: {}, product: {}", orderItem, product);
+    /**
+     * Reserves the quantity of each order item, in a single batch for the products kept in their row and one counter
+     * at a time for the split ones.
+     */
+    private int[] reserveBulkQuantities(List<OrderItem> orderItems, Map<Integer, Product> productMap) {
+        log.trace("[ reserveBulkQuantities ] orderItems: {}", orderItems.size());
+
+        int[] reservedCounts = new int[orderItems.size()];
+        List<Integer> batchIndexes = new ArrayList<>();
+        for (int i = 0; i < orderItems.size(); i++) {
+            OrderItem orderItem = orderItems.get(i);
+            if (ProductStockService.isSharded(productMap.get(orderItem.getProductId()))) {
+                reservedCounts[i] = productStockService.reserveSharded(orderItem.getProductId(), orderItem.getQuantity()) ? 1 : 0;
+            } else {
+                batchIndexes.add(i);
+            }
+        }
 
-        return OrderItemResponseDTO.builder()
-                .id(orderItem.getId())
-                .orderId(orderItem.getOrderId())
-                .productId(orderItem.getProductId())
-                .productName(product.getName())
-                .productDescription(product.getDescription())
-                .productPrice(product.getPrice())
-                .build();
+        int[] batchCounts = productRepository.reserveQuantities(
+                batchIndexes.stream().map(i -> orderItems.get(i).getProductId()).toList(),
+                batchIndexes.stream().map(i -> orderItems.get(i).getQuantity()).toList());
+        for (int i = 0; i < batchCounts.length; i++) {
+            reservedCounts[batchIndexes.get(i)] = batchCounts[i];
+        }
+        return reservedCounts;
     }
 
-    private Product increaseProductQuantity(Product product) {
-        log.trace("[ increaseProductQuantity ] product: {}", product);
+    private Integer getOrderItemId(Integer id) {
+        log.trace("[ getOrderItemId ] id: {}", id);
 
-        product.setQuantity(product.getQuantity() + 1);
-        return productRepository.save(product);
+        if (!orderItemRepository.existsById(id)) {
+            throw new NotFoundException(format("Order item of id %d not found.", id));
+        }
+        return id;
     }
 
     private Order getOrder(Integer orderId) {
@@ -306,9 +521,9 @@ public class OrderItemService {
         return orderRepository.findById(orderId).orElseThrow(() -> new NotFoundException(format("Order of id %d not found.", orderId)));
     }
 
-    private Product getProduct(Integer productId) {
+    private CachedProduct getProduct(Integer productId) {
         log.trace("[ getProduct ] productId: {}", productId);
 
-        return productRepository.findById(productId).orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", productId)));
+        return productCache.find(productId).orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", productId)));
     }
 }
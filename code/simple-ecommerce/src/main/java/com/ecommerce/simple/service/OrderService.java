@@ -3,19 +3,24 @@ package com.ecommerce.simple.service;
 import com.ecommerce.simple.dto.OrderRequestDTO;
 import com.ecommerce.simple.dto.OrderResponseDTO;
 import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.exception.PreconditionRequiredException;
+import com.ecommerce.simple.mapper.OrderMapper;
 import com.ecommerce.simple.model.Order;
 import com.ecommerce.simple.repository.OrderRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
-import org.modelmapper.record.RecordModule;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import static java.lang.String.format;
 
@@ -25,11 +30,21 @@ import static java.lang.String.format;
 public class OrderService {
 
     private final OrderRepository orderRepository;
-
-    private static final ModelMapper modelMapper = new ModelMapper();
-
-    static {
-        modelMapper.registerModule(new RecordModule());
+    private final NdjsonStreamer ndjsonStreamer;
+    private final OrderMapper orderMapper;
+    private final IdempotencyService idempotencyService;
+    private final ReservationService reservationService;
+    private final MissingIdCache missingIdCache;
+    private final Validator validator;
+
+    /**
+     * Saves the order once per idempotency key, a retry gets the order saved the first time.
+     */
+    public OrderResponseDTO saveOrderOnce(OrderRequestDTO orderRequestDTO, String idempotencyKey) {
+        log.debug("[ saveOrderOnce ] orderRequestDTO: {}, idempotencyKey: {}", orderRequestDTO, idempotencyKey);
+
+        return idempotencyService.execute(idempotencyKey, "POST /api/orders", orderRequestDTO,
+                OrderResponseDTO.class, () -> saveOrder(orderRequestDTO));
     }
 
     public OrderResponseDTO saveOrder(OrderRequestDTO orderRequestDTO) {
@@ -41,54 +56,78 @@ public class OrderService {
         Order orderSaved = orderRepository.save(order);
         log.debug("orderSaved: {}", orderSaved);
 
-        OrderResponseDTO orderResponseDTO = modelMapper.map(orderSaved, OrderResponseDTO.class);
+        missingIdCache.created(Order.class, orderSaved.getId());
+
+        OrderResponseDTO orderResponseDTO = orderMapper.toOrderResponseDTO(orderSaved);
         log.debug("orderResponseDTO: {}", orderResponseDTO);
 
         return orderResponseDTO;
     }
 
-    public List<OrderResponseDTO> getOrders() {
-        log.debug("[ getOrders ]");
+    public ResponseEntity<List<OrderResponseDTO>> getOrders(Integer after, Integer size) {
+        log.debug("[ getOrders ] after: {}, size: {}", after, size);
 
-        List<Order> allOrders = orderRepository.findAll();
-        log.debug("allOrders: {}", allOrders);
+        int pageSize = Pagination.pageSize(size);
+        List<OrderResponseDTO> orderResponseDTOList = orderRepository.findResponsesByIdGreaterThan(Pagination.cursor(after), Pagination.limit(pageSize));
+        log.debug("orderResponseDTOList: {}", orderResponseDTOList);
 
-        if (CollectionUtils.isEmpty(allOrders)) {
+        if (CollectionUtils.isEmpty(orderResponseDTOList)) {
             throw new NotFoundException("No orders found.");
         }
 
-        List<OrderResponseDTO> orderResponseDTOList = createOrderList(allOrders);
-        log.debug("orderResponseDTOList: {}", orderResponseDTOList);
+        return Pagination.createPageResponse(orderResponseDTOList, pageSize, OrderResponseDTO::getId);
+    }
+
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        log.debug("[ exportOrders ]");
 
-        return orderResponseDTOList;
+        return ndjsonStreamer.stream(orderRepository::streamAll);
     }
 
     public OrderResponseDTO getOrder(Integer id) {
         log.debug("[ getOrder ] id: {}", id);
 
-        Optional<Order> orderOptional = orderRepository.findById(id);
-        Order order = orderOptional.orElseThrow(() -> new NotFoundException(format("Order of id %d not found.", id)));
-        log.debug("order: {}", order);
-
-        OrderResponseDTO orderResponseDTO = modelMapper.map(order, OrderResponseDTO.class);
+        Optional<OrderResponseDTO> orderOptional = missingIdCache.find(Order.class, id, () -> orderRepository.findResponseById(id));
+        OrderResponseDTO orderResponseDTO = orderOptional.orElseThrow(() -> new NotFoundException(format("Order of id %d not found.", id)));
         log.debug("orderResponseDTO: {}", orderResponseDTO);
 
         return orderResponseDTO;
     }
 
-    public OrderResponseDTO updateOrder(Integer id, Order order) {
-        log.debug("[ updateOrder ] id: {}, order: {}", id, order);
+    /**
+     * Turns the holds of the order into sales, the ones already expired are given back instead.
+     */
+    public OrderResponseDTO confirmOrder(Integer id) {
+        log.debug("[ confirmOrder ] id: {}", id);
 
         // checks if the order exist with such id
         getOrder(id);
 
+        int holdsConfirmed = reservationService.confirm(id);
+        log.debug("holdsConfirmed: {}", holdsConfirmed);
+
+        return getOrder(id);
+    }
+
+    public OrderResponseDTO updateOrder(Integer id, Order order) {
+        log.debug("[ updateOrder ] id: {}, order: {}", id, order);
+
+        // an order without the version it was read at would overwrite whatever was written since
+        if (order.getVersion() == null) {
+            throw new PreconditionRequiredException(format("Version of the order of id %d missing, the order must be read before being updated.", id));
+        }
+
         // ensures that order has the correct id
         order.setId(id);
+        // validated here, the update below does not go through the entity
+        checksConstraints(order);
 
-        Order orderUpdated = orderRepository.save(order);
+        Order orderUpdated = orderRepository.updateReturningById(id, order)
+                .or(() -> updateAfterFold(id, order))
+                .orElseThrow(() -> notUpdated(id));
         log.debug("orderUpdated: {}", orderUpdated);
 
-        OrderResponseDTO orderResponseDTO = modelMapper.map(orderUpdated, OrderResponseDTO.class);
+        OrderResponseDTO orderResponseDTO = orderMapper.toOrderResponseDTO(orderUpdated);
         log.debug("orderResponseDTO: {}", orderResponseDTO);
 
         return orderResponseDTO;
@@ -97,10 +136,9 @@ public class OrderService {
     public ResponseEntity<Void> deleteOrder(Integer id) {
         log.debug("[ deleteOrder ] id: {}", id);
 
-        // checks if the order exist with such id
-        getOrder(id);
-
-        orderRepository.deleteById(id);
+        if (orderRepository.deleteCountingById(id) == 0) {
+            throw new NotFoundException(format("Order of id %d not found.", id));
+        }
         log.debug("Order deleted: {}", id);
 
         ResponseEntity<Void> responseEntity = ResponseEntity.noContent().build();
@@ -109,14 +147,6 @@ public class OrderService {
         return responseEntity;
     }
 
-    private static List<OrderResponseDTO> createOrderList(List<Order> orders) {
-        log.trace("[ createOrderList ] orders: {}", orders);
-
-        return orders.stream()
-                .map(order -> modelMapper.map(order, OrderResponseDTO.class))
-                .collect(Collectors.toList());
-    }
-
     private static Order createOrder(OrderRequestDTO orderRequestDTO) {
         log.trace("[ createOrder ] orderRequestDTO: {}", orderRequestDTO);
 
@@ -126,4 +156,32 @@ public class OrderService {
                 .build();
     }
 
+    private void checksConstraints(Order order) {
+        Set<ConstraintViolation<Order>> constraintViolations = validator.validate(order);
+        if (!constraintViolations.isEmpty()) {
+            throw new ConstraintViolationException(constraintViolations);
+        }
+    }
+
+    /**
+     * Tells why nothing was updated, with a second query only then: either the order does not exist, or it was
+     * changed since the version sent.
+     */
+    /**
+     * An update waiting for the row of the order while its amounts were folded sees the row folded and the amounts not
+     * deleted yet, counting them twice in its version: it is tried again when the version read is still the one given.
+     */
+    private Optional<Order> updateAfterFold(Integer id, Order order) {
+        return orderRepository.findResponseById(id)
+                .filter(orderResponseDTO -> order.getVersion().equals(orderResponseDTO.getVersion()))
+                .flatMap(orderResponseDTO -> orderRepository.updateReturningById(id, order));
+    }
+
+    private RuntimeException notUpdated(Integer id) {
+        if (!orderRepository.existsById(id)) {
+            return new NotFoundException(format("Order of id %d not found.", id));
+        }
+        return new ObjectOptimisticLockingFailureException(Order.class, id);
+    }
+
 }
@@ -0,0 +1,131 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.OrderTotalProperties;
+import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.repository.OrderRepository;
+import com.ecommerce.simple.repository.OrderTotalDeltaRepository;
+import com.ecommerce.simple.repository.OrderTotalDeltaRepository.FoldedTotal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Adds amounts to the order totals. Every order item written used to update the row of its order and keep it locked
+ * until its commit, so the items of one busy order waited on each other.
+ * <p>
+ * An amount is inserted into {@code order_total_delta} by the transaction of its order item instead, committed or
+ * rolled back with it. Every {@code order-total.coalescing-window}, the amounts committed are folded into their
+ * orders, deleted and added to the totals by a single statement: one {@code UPDATE "order"} per order, whatever the
+ * number of amounts. An amount that could not be folded stays where it is for the next window. Meanwhile the reads of
+ * an order add up its total and its amounts left, so they never lag behind its order items, and count each amount in
+ * its version: an update of the order from a version read before an amount is refused, a fold changes neither.
+ * <p>
+ * The foreign key of an amount locks its order against deletion until the transaction ends, without blocking the
+ * updates of its total. A window of 0 updates the total in the transaction adding the amount instead.
+ * <p>
+ * The {@code order.total.amounts} and {@code order.total.updates} counters give how many amounts each update merges.
+ */
+@Slf4j
+@Service
+public class OrderTotalCoalescer {
+
+    private static final int FOLD_BATCH_SIZE = 10000;
+
+    private final OrderRepository orderRepository;
+    private final OrderTotalDeltaRepository orderTotalDeltaRepository;
+    private final ConflictRetry conflictRetry;
+    private final DatabaseBulkhead databaseBulkhead;
+    private final long windowNanos;
+    private final Counter amountsCounter;
+    private final Counter updatesCounter;
+    private final ScheduledExecutorService folder;
+
+    public OrderTotalCoalescer(OrderRepository orderRepository,
+                               OrderTotalDeltaRepository orderTotalDeltaRepository,
+                               ConflictRetry conflictRetry,
+                               DatabaseBulkhead databaseBulkhead,
+                               MeterRegistry meterRegistry,
+                               OrderTotalProperties orderTotalProperties) {
+        this.orderRepository = orderRepository;
+        this.orderTotalDeltaRepository = orderTotalDeltaRepository;
+        this.conflictRetry = conflictRetry;
+        this.databaseBulkhead = databaseBulkhead;
+        this.windowNanos = orderTotalProperties.coalescingWindow().toNanos();
+        this.amountsCounter = meterRegistry.counter("order.total.amounts");
+        this.updatesCounter = meterRegistry.counter("order.total.updates");
+        this.folder = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("order-total-fold").daemon().factory());
+    }
+
+    /**
+     * Adds the amount, negative to subtract it, to the order total, as part of the current transaction.
+     *
+     * @throws NotFoundException when the order does not exist
+     */
+    public void add(Integer orderId, Double amount) {
+        log.trace("[ add ] orderId: {}, amount: {}", orderId, amount);
+
+        if (windowNanos <= 0) {
+            Double totalAmount = orderRepository.increaseTotalAmount(orderId, amount)
+                    .orElseThrow(() -> new NotFoundException(format("Order of id %d not found.", orderId)));
+            log.trace("[ add ] orderId: {}, totalAmount: {}", orderId, totalAmount);
+            return;
+        }
+
+        if (orderTotalDeltaRepository.insert(orderId, amount) == 0) {
+            throw new NotFoundException(format("Order of id %d not found.", orderId));
+        }
+    }
+
+    /**
+     * Folds the amounts committed so far into their order totals, a batch at a time.
+     *
+     * @return the number of amounts folded
+     */
+    public int fold() {
+        int folded = 0;
+        int batch;
+        do {
+            // the amounts are committed already, they are not turned away by the bulkhead
+            List<FoldedTotal> totals = databaseBulkhead.unbounded(() -> conflictRetry.execute("foldOrderTotals", () -> orderTotalDeltaRepository.fold(FOLD_BATCH_SIZE)));
+            batch = totals.stream().mapToInt(FoldedTotal::getAmounts).sum();
+            log.trace("[ fold ] orders: {}, amounts: {}", totals.size(), batch);
+
+            amountsCounter.increment(batch);
+            updatesCounter.increment(totals.size());
+            folded += batch;
+        } while (batch == FOLD_BATCH_SIZE);
+        return folded;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFolding() {
+        if (windowNanos > 0) {
+            folder.scheduleWithFixedDelay(this::foldCommitted, windowNanos, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        folder.shutdownNow();
+    }
+
+    private void foldCommitted() {
+        try {
+            fold();
+        } catch (RuntimeException e) {
+            // an exception would cancel the folding for good, the amounts are folded on the next window instead
+            log.error("[ foldCommitted ] amounts left for the next window: {}", e.getMessage());
+        }
+    }
+}
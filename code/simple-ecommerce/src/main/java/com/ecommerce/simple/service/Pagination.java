@@ -0,0 +1,49 @@
+package com.ecommerce.simple.service;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination over the ids: a page holds the rows with id greater than the cursor, in id order.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class Pagination {
+
+    static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static Integer cursor(Integer after) {
+        return after == null ? 0 : after;
+    }
+
+    static int pageSize(Integer size) {
+        if (size == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Fetches one row more than the page size, to know whether there is a next page without counting the table.
+     */
+    static Limit limit(int pageSize) {
+        return Limit.of(pageSize + 1);
+    }
+
+    static <T> ResponseEntity<List<T>> createPageResponse(List<T> rows, int pageSize, Function<T, Integer> idGetter) {
+        if (rows.size() <= pageSize) {
+            return ResponseEntity.ok(rows);
+        }
+
+        List<T> page = rows.subList(0, pageSize);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, String.valueOf(idGetter.apply(page.get(pageSize - 1))))
+                .body(page);
+    }
+}
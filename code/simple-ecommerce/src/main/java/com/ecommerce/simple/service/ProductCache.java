@@ -0,0 +1,94 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.model.Product;
+import com.ecommerce.simple.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.ecommerce.simple.configuration.CacheConfiguration.PRODUCTS_CACHE;
+
+/**
+ * Products by id, read through the {@code products} cache by both the product and the order item services. The cache
+ * holds immutable snapshots, never the managed entities: a caller changing the product it got back can not change
+ * what the next callers read.
+ * <p>
+ * Every method of {@link ProductRepository} changing a product row evicts it. A read-write transaction reads the
+ * cache but never fills it, the row it reads may hold changes of its own that are not committed yet.
+ */
+@Slf4j
+@Service
+public class ProductCache {
+
+    private final ProductRepository productRepository;
+    private final Cache cache;
+
+    public ProductCache(ProductRepository productRepository, CacheManager cacheManager) {
+        this.productRepository = productRepository;
+        this.cache = Objects.requireNonNull(cacheManager.getCache(PRODUCTS_CACHE));
+    }
+
+    /**
+     * @return the product, or empty when it does not exist
+     */
+    public Optional<CachedProduct> find(Integer id) {
+        log.trace("[ find ] id: {}", id);
+
+        CachedProduct cachedProduct = cache.get(id, CachedProduct.class);
+        if (cachedProduct != null) {
+            return Optional.of(cachedProduct);
+        }
+
+        Optional<CachedProduct> product = productRepository.findById(id).map(CachedProduct::of);
+        if (product.isPresent() && !isReadWriteTransaction()) {
+            cache.put(id, product.get());
+        }
+        return product;
+    }
+
+    private static boolean isReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * The product as read from its row, its quantity being 0 when its stock is split.
+     */
+    public record CachedProduct(Integer id,
+                                String name,
+                                String description,
+                                Integer quantity,
+                                Double price,
+                                Integer stockShards,
+                                Integer version) {
+
+        static CachedProduct of(Product product) {
+            return new CachedProduct(product.getId(), product.getName(), product.getDescription(), product.getQuantity(),
+                    product.getPrice(), product.getStockShards(), product.getVersion());
+        }
+
+        public boolean sharded() {
+            return stockShards != null && stockShards > 0;
+        }
+
+        /**
+         * @return a new, detached entity with the values of the snapshot
+         */
+        public Product toProduct() {
+            return Product.builder()
+                    .id(id)
+                    .name(name)
+                    .description(description)
+                    .quantity(quantity)
+                    .price(price)
+                    .stockShards(stockShards)
+                    .version(version)
+                    .build();
+        }
+    }
+}
@@ -2,98 +2,161 @@ package com.ecommerce.simple.service;
 
 import com.ecommerce.simple.dto.ProductRequestDTO;
 import com.ecommerce.simple.dto.ProductResponseDTO;
-import com.ecommerce.simple.exception.DuplicateKeyValueException;
 import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.exception.PreconditionRequiredException;
+import com.ecommerce.simple.mapper.ProductMapper;
 import com.ecommerce.simple.model.Product;
 import com.ecommerce.simple.repository.ProductRepository;
-import lombok.RequiredArgsConstructor;
+import com.ecommerce.simple.service.ProductCache.CachedProduct;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
-import org.modelmapper.record.RecordModule;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import static java.lang.String.format;
 
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class ProductService {
 
     private final ProductRepository productRepository;
-
-    private static final ModelMapper modelMapper = new ModelMapper();
-
-    static {
-        modelMapper.registerModule(new RecordModule());
+    private final ProductCache productCache;
+    private final NdjsonStreamer ndjsonStreamer;
+    private final ProductMapper productMapper;
+    private final ProductStockService productStockService;
+    private final MissingIdCache missingIdCache;
+    private final Validator validator;
+    private final SingleFlight<Integer, ProductResponseDTO> productLookups;
+
+    public ProductService(ProductRepository productRepository,
+                          ProductCache productCache,
+                          NdjsonStreamer ndjsonStreamer,
+                          ProductMapper productMapper,
+                          ProductStockService productStockService,
+                          MissingIdCache missingIdCache,
+                          Validator validator,
+                          MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.productCache = productCache;
+        this.ndjsonStreamer = ndjsonStreamer;
+        this.productMapper = productMapper;
+        this.productStockService = productStockService;
+        this.missingIdCache = missingIdCache;
+        this.validator = validator;
+        this.productLookups = new SingleFlight<>("product.lookup", meterRegistry);
     }
 
+    @Transactional
     public ProductResponseDTO saveProduct(ProductRequestDTO productRequestDTO) {
         log.debug("[ saveProduct ] productRequestDTO: {}", productRequestDTO);
 
-        Product product = modelMapper.map(productRequestDTO, Product.class);
+        Product product = productMapper.toProduct(productRequestDTO);
         log.debug("product: {}", product);
 
-        checkIfTheProductExists(product);
-
-        Product productCreated = productRepository.save(product);
+        Integer quantity = product.getQuantity();
+        Product productCreated = saveStock(product, ProductStockService.isSharded(product));
         log.debug("productCreated: {}", productCreated);
 
-        ProductResponseDTO productResponseDTO = modelMapper.map(productCreated, ProductResponseDTO.class);
+        missingIdCache.created(Product.class, productCreated.getId());
+
+        ProductResponseDTO productResponseDTO = productMapper.toProductResponseDTO(productCreated);
+        productResponseDTO.setQuantity(quantity);
         log.debug("productResponseDTO: {}", productResponseDTO);
 
         return productResponseDTO;
     }
 
-    public List<ProductResponseDTO> getProducts() {
-        log.debug("[ getProducts ]");
+    public ResponseEntity<List<ProductResponseDTO>> getProducts(Integer after, Integer size) {
+        log.debug("[ getProducts ] after: {}, size: {}", after, size);
 
-        List<Product> allProducts = productRepository.findAll();
-        log.debug("allProducts: {}", allProducts);
+        int pageSize = Pagination.pageSize(size);
+        List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(Pagination.cursor(after), Pagination.limit(pageSize));
+        log.debug("products: {}", products);
 
-        if (CollectionUtils.isEmpty(allProducts)) {
+        if (CollectionUtils.isEmpty(products)) {
             throw new NotFoundException("No products found.");
         }
 
-        List<ProductResponseDTO> orderResponseDTOList = createProductList(allProducts);
-        log.debug("orderResponseDTOList: {}", orderResponseDTOList);
+        List<ProductResponseDTO> productResponseDTOList = productMapper.toProductResponseDTOList(products);
+        productStockService.fillQuantities(productResponseDTOList);
+        log.debug("productResponseDTOList: {}", productResponseDTOList);
 
-        return orderResponseDTOList;
+        return Pagination.createPageResponse(productResponseDTOList, pageSize, ProductResponseDTO::getId);
     }
 
+    public ResponseEntity<StreamingResponseBody> exportProducts() {
+        log.debug("[ exportProducts ]");
+
+        return ndjsonStreamer.stream(productRepository::streamAll);
+    }
+
+    /**
+     * Concurrent reads of the same product share a single lookup, and the same response: a product on the home page
+     * is asked for by every visitor at once, and a cache miss would send all of them to the database.
+     */
     public ProductResponseDTO getProduct(Integer id) {
         log.debug("[ getProduct ] id: {}", id);
 
-        Optional<Product> productOptional = productRepository.findById(id);
+        return productLookups.execute(id, () -> findProduct(id));
+    }
+
+    private ProductResponseDTO findProduct(Integer id) {
+        log.trace("[ findProduct ] id: {}", id);
+
+        Optional<CachedProduct> productOptional = missingIdCache.find(Product.class, id, () -> productCache.find(id));
         log.debug("productOptional: {}", productOptional);
 
-        Product product = productOptional.orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", id)));
+        CachedProduct product = productOptional.orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", id)));
         log.debug("product: {}", product);
 
-        ProductResponseDTO productResponseDTO = modelMapper.map(product, ProductResponseDTO.class);
+        ProductResponseDTO productResponseDTO = productMapper.toProductResponseDTO(product);
+        productResponseDTO.setQuantity(productStockService.quantityOf(product));
         log.debug("productResponseDTO: {}", productResponseDTO);
 
         return productResponseDTO;
     }
 
+    @Transactional
     public ProductResponseDTO updateProduct(Integer id, Product product) {
         log.debug("[ updateProduct ] id: {}, product: {}", id, product);
 
-        // checks if the product exist with such id
-        getProduct(id);
+        // a product without the version it was read at would overwrite whatever was written since
+        if (product.getVersion() == null) {
+            throw new PreconditionRequiredException(format("Version of the product of id %d missing, the product must be read before being updated.", id));
+        }
 
         // ensures that product has the correct id
         product.setId(id);
+        // validated here, the update below does not go through the entity
+        checksConstraints(product);
 
-        Product productUpdated = productRepository.save(product);
+        Integer quantity = product.getQuantity();
+        boolean sharded = ProductStockService.isSharded(product);
+        if (sharded) {
+            product.setQuantity(0);
+        }
+        Product productUpdated = productRepository.updateReturningById(id, product)
+                .orElseThrow(() -> notUpdated(id));
         log.debug("productUpdated: {}", productUpdated);
 
-        ProductResponseDTO productResponseDTO = modelMapper.map(productUpdated, ProductResponseDTO.class);
+        if (sharded) {
+            // the reservations from the counters do not change the version, the stock given replaces what they left
+            productStockService.distribute(productUpdated, quantity);
+        }
+
+        ProductResponseDTO productResponseDTO = productMapper.toProductResponseDTO(productUpdated);
+        productResponseDTO.setQuantity(quantity);
         log.debug("productResponseDTO: {}", productResponseDTO);
 
         return productResponseDTO;
@@ -102,10 +165,9 @@ public class ProductService {
     public ResponseEntity<Void> deleteProduct(Integer id) {
         log.debug("[ deleteProduct ] id: {}", id);
 
-        // checks if the product exist with such id
-        getProduct(id);
-
-        productRepository.deleteById(id);
+        if (productRepository.deleteCountingById(id) == 0) {
+            throw new NotFoundException(format("Product of id %d not found.", id));
+        }
         log.debug("Product deleted: {}", id);
 
         ResponseEntity<Void> responseEntity = ResponseEntity.noContent().build();
@@ -114,20 +176,41 @@ public class ProductService {
         return responseEntity;
     }
 
-    private void checkIfTheProductExists(Product product) {
-        log.trace("[ checkIfTheProductExists ] product: {}", product);
+    /**
+     * Saves the product, its stock split between its counters when it has some, its product row then keeping none.
+     */
+    private Product saveStock(Product product, boolean counters) {
+        log.trace("[ saveStock ] product: {}, counters: {}", product, counters);
 
-        productRepository.findByName(product.getName())
-                .ifPresent(p -> {
-                    throw new DuplicateKeyValueException(format("Product '%s' already exists.", p.getName()));
-                });
+        Integer quantity = product.getQuantity();
+        if (!counters) {
+            return productRepository.save(product);
+        }
+
+        if (quantity != null && ProductStockService.isSharded(product)) {
+            product.setQuantity(0);
+        }
+        Product productSaved = productRepository.save(product);
+        productRepository.flush();
+        productStockService.distribute(productSaved, quantity);
+        return productSaved;
     }
 
-    private static List<ProductResponseDTO> createProductList(List<Product> products) {
-        log.trace("[ createProductList ] products: {}", products);
+    private void checksConstraints(Product product) {
+        Set<ConstraintViolation<Product>> constraintViolations = validator.validate(product);
+        if (!constraintViolations.isEmpty()) {
+            throw new ConstraintViolationException(constraintViolations);
+        }
+    }
 
-        return products.stream()
-                .map(product -> modelMapper.map(product, ProductResponseDTO.class))
-                .collect(Collectors.toList());
+    /**
+     * Tells why nothing was updated, with a second query only then: either the product does not exist, or it was
+     * changed since the version sent.
+     */
+    private RuntimeException notUpdated(Integer id) {
+        if (!productRepository.existsById(id)) {
+            return new NotFoundException(format("Product of id %d not found.", id));
+        }
+        return new ObjectOptimisticLockingFailureException(Product.class, id);
     }
 }
@@ -0,0 +1,150 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.ProductResponseDTO;
+import com.ecommerce.simple.model.Product;
+import com.ecommerce.simple.repository.ProductRepository;
+import com.ecommerce.simple.repository.ProductStockShardRepository;
+import com.ecommerce.simple.repository.ProductStockShardRepository.ShardReservation;
+import com.ecommerce.simple.repository.ProductStockShardRepository.ShardedStock;
+import com.ecommerce.simple.service.ProductCache.CachedProduct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Stock of the products, kept either in the product row or, for the products with {@code stockShards}, split
+ * between that many counter rows. Every order of a product locks its row, so past a few hundred orders per second
+ * of the same product they wait on each other; split, they lock one counter each.
+ * <p>
+ * The product row of a split product keeps a quantity of 0, and its reported quantity is the sum of its counters.
+ * An order takes its whole quantity from a single counter with enough stock when there is one. Otherwise it locks all
+ * the counters and draws from several of them, so a split product refuses an order only when its counters together
+ * have not enough stock, as it would when kept in its row.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ProductStockService {
+
+    private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final ProductStockShardRepository productStockShardRepository;
+
+    public static boolean isSharded(Product product) {
+        return product.getStockShards() != null && product.getStockShards() > 0;
+    }
+
+    /**
+     * Takes the quantity from the stock only when there is enough left over.
+     *
+     * @return the product, or empty when the product does not exist or has not enough stock
+     */
+    public Optional<Product> reserve(Integer productId, Integer quantity) {
+        log.trace("[ reserve ] productId: {}, quantity: {}", productId, quantity);
+
+        // the cached product tells where its stock is, so a product kept in its row is reserved by a single statement
+        Optional<CachedProduct> product = productCache.find(productId);
+        if (product.isEmpty()) {
+            return Optional.empty();
+        }
+        if (product.get().sharded()) {
+            ShardReservation shardReservation = reserveFromShards(productId, quantity);
+            if (shardReservation.getShards() > 0) {
+                return shardReservation.getReserved() > 0 ? product.map(CachedProduct::toProduct) : Optional.empty();
+            }
+            // no longer split since it was cached
+        }
+        // the stock is checked and decremented by the same statement, so concurrent orders can not oversell it
+        return productRepository.reserveQuantity(productId, quantity);
+    }
+
+    /**
+     * Takes the quantity from a counter of the split product, for callers that already know it is split.
+     *
+     * @return true when there was enough stock left over
+     */
+    public boolean reserveSharded(Integer productId, Integer quantity) {
+        log.trace("[ reserveSharded ] productId: {}, quantity: {}", productId, quantity);
+
+        return reserveFromShards(productId, quantity).getReserved() > 0;
+    }
+
+    /**
+     * Gives back the quantity to the stock.
+     *
+     * @return the product, or empty when the product does not exist
+     */
+    public Optional<Product> release(Integer productId, Integer quantity) {
+        log.trace("[ release ] productId: {}, quantity: {}", productId, quantity);
+
+        if (productStockShardRepository.release(productId, quantity).isPresent()) {
+            return productCache.find(productId).map(CachedProduct::toProduct);
+        }
+        return productRepository.releaseQuantity(productId, quantity);
+    }
+
+    /**
+     * Replaces the counters of the product by new ones sharing the quantity, none when its stock is not split.
+     * Joins the transaction saving the product, flushed beforehand: the counters reference its row.
+     */
+    public void distribute(Product product, Integer quantity) {
+        log.trace("[ distribute ] product: {}, quantity: {}", product, quantity);
+
+        productStockShardRepository.deleteByProductId(product.getId());
+        if (isSharded(product)) {
+            int shards = productStockShardRepository.insertShards(product.getId(), product.getStockShards(), quantity);
+            log.debug("Stock of product {} split into {} counters", product.getId(), shards);
+        }
+    }
+
+    /**
+     * Sets the quantity of the split products to the sum of their counters.
+     */
+    public void fillQuantities(List<ProductResponseDTO> productResponseDTOList) {
+        List<Integer> shardedProductIds = productResponseDTOList.stream()
+                .filter(product -> product.getStockShards() != null && product.getStockShards() > 0)
+                .map(ProductResponseDTO::getId)
+                .toList();
+        if (shardedProductIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Integer> quantityByProductId = productStockShardRepository.sumQuantities(shardedProductIds).stream()
+                .collect(Collectors.toMap(ShardedStock::getProductId, ShardedStock::getQuantity));
+        productResponseDTOList.forEach(product -> {
+            if (quantityByProductId.containsKey(product.getId())) {
+                product.setQuantity(quantityByProductId.get(product.getId()));
+            }
+        });
+    }
+
+    public Integer quantityOf(CachedProduct product) {
+        if (!product.sharded()) {
+            return product.quantity();
+        }
+        return productStockShardRepository.sumQuantities(List.of(product.id())).stream()
+                .findFirst()
+                .map(ShardedStock::getQuantity)
+                .orElse(0);
+    }
+
+    private ShardReservation reserveFromShards(Integer productId, Integer quantity) {
+        ShardReservation shardReservation = productStockShardRepository.reserve(productId, quantity);
+        // the counter picked was emptied by a concurrent order in between: picks another one
+        while (shardReservation.getReserved() == 0 && shardReservation.getCandidates() > 0) {
+            log.trace("[ reserveFromShards ] productId: {}, counter taken, trying another one", productId);
+            shardReservation = productStockShardRepository.reserve(productId, quantity);
+        }
+        if (shardReservation.getReserved() == 0 && shardReservation.getShards() > 0) {
+            // no single counter has enough, the stock may still be spread over several of them
+            log.trace("[ reserveFromShards ] productId: {}, no counter with {}, drawing from several", productId, quantity);
+            shardReservation = productStockShardRepository.reserveAcross(productId, quantity);
+        }
+        return shardReservation;
+    }
+}
@@ -0,0 +1,156 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.ReservationProperties;
+import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.model.OrderItem;
+import com.ecommerce.simple.model.Product;
+import com.ecommerce.simple.repository.OrderItemRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * Holds: order items that take their product out of the stock only for a while. A hold becomes a sale when its
+ * order is confirmed, otherwise it is deleted once expired, giving its product back and taking its price off the
+ * order total.
+ * <p>
+ * The expiries are kept in a {@link TimingWheel}, which gives back the holds expired on each tick in a single batch.
+ */
+@Slf4j
+@Service
+public class ReservationService {
+
+    private static final int RELEASE_BATCH_SIZE = 1000;
+
+    private final OrderItemRepository orderItemRepository;
+    private final ProductStockService productStockService;
+    private final OrderTotalCoalescer orderTotalCoalescer;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Duration tick;
+    private final TimingWheel<Integer> timingWheel;
+
+    public ReservationService(OrderItemRepository orderItemRepository,
+                              ProductStockService productStockService,
+                              OrderTotalCoalescer orderTotalCoalescer,
+                              TransactionTemplate transactionTemplate,
+                              ReservationProperties reservationProperties) {
+        this.orderItemRepository = orderItemRepository;
+        this.productStockService = productStockService;
+        this.orderTotalCoalescer = orderTotalCoalescer;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = reservationProperties.ttl();
+        this.tick = reservationProperties.tick();
+        this.timingWheel = new TimingWheel<>("reservation-expiry", tick, reservationProperties.wheelSize(), this::releaseExpiredHolds);
+    }
+
+    public Instant holdUntil() {
+        return Instant.now().plus(ttl);
+    }
+
+    /**
+     * Schedules the expiry of the holds among these order items, once the current transaction commits.
+     */
+    public void expire(Collection<OrderItem> orderItems) {
+        log.trace("[ expire ] orderItems: {}", orderItems.size());
+
+        List<OrderItem> holds = orderItems.stream()
+                .filter(orderItem -> orderItem.getReservedUntil() != null)
+                .toList();
+        if (holds.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(holds);
+                }
+            });
+        } else {
+            schedule(holds);
+        }
+    }
+
+    /**
+     * Turns the holds of the order into sales.
+     *
+     * @return the number of holds confirmed, the expired ones are not
+     */
+    public int confirm(Integer orderId) {
+        log.debug("[ confirm ] orderId: {}", orderId);
+
+        return orderItemRepository.confirmHolds(orderId, Instant.now());
+    }
+
+    /**
+     * Schedules again the holds left by a previous run of the application.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleHolds() {
+        List<OrderItem> holds = orderItemRepository.findByReservedUntilNotNull();
+        log.debug("[ scheduleHolds ] holds: {}", holds.size());
+
+        schedule(holds);
+    }
+
+    @PreDestroy
+    public void close() {
+        timingWheel.close();
+    }
+
+    private void schedule(List<OrderItem> holds) {
+        holds.forEach(hold -> timingWheel.schedule(hold.getId(), hold.getReservedUntil()));
+    }
+
+    private void releaseExpiredHolds(List<Integer> orderItemIds) {
+        log.debug("[ releaseExpiredHolds ] orderItemIds: {}", orderItemIds.size());
+
+        for (int from = 0; from < orderItemIds.size(); from += RELEASE_BATCH_SIZE) {
+            List<Integer> batch = orderItemIds.subList(from, Math.min(from + RELEASE_BATCH_SIZE, orderItemIds.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status -> releaseExpiredHolds(batch, Instant.now()));
+            } catch (RuntimeException e) {
+                // tried again on the next tick, the holds released meanwhile are skipped then
+                log.error("[ releaseExpiredHolds ] {} holds not released: {}", batch.size(), e.getMessage());
+                Instant retry = Instant.now().plus(tick);
+                batch.forEach(orderItemId -> timingWheel.schedule(orderItemId, retry));
+            }
+        }
+    }
+
+    private void releaseExpiredHolds(List<Integer> orderItemIds, Instant now) {
+        // skips the holds confirmed, deleted or updated since they were scheduled
+        List<OrderItem> released = orderItemRepository.deleteExpiredHolds(orderItemIds, now);
+        log.debug("released: {}", released.size());
+
+        // a single update per product and per order, whatever the number of holds
+        Map<Integer, Integer> quantityByProductId = released.stream()
+                .collect(Collectors.groupingBy(OrderItem::getProductId, Collectors.summingInt(OrderItem::getQuantity)));
+        Map<Integer, Double> priceByProductId = new HashMap<>();
+        quantityByProductId.forEach((productId, quantity) -> {
+            Product product = productStockService.release(productId, quantity)
+                    .orElseThrow(() -> new NotFoundException(format("Product of id %d not found.", productId)));
+            priceByProductId.put(productId, product.getPrice());
+        });
+
+        Map<Integer, Double> amountByOrderId = released.stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId, Collectors.summingDouble(orderItem -> priceByProductId.get(orderItem.getProductId()) * orderItem.getQuantity())));
+        amountByOrderId.forEach((orderId, amount) -> orderTotalCoalescer.add(orderId, -amount));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ecommerce.simple.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares a lookup between the concurrent calls for the same key: the first one runs it, the calls arriving while it
+ * runs wait for it and get its result, or its exception, instead of running it again. Nothing is kept once it ends.
+ * <p>
+ * Keys only meet in a {@link ConcurrentHashMap}, the calls for different keys never wait on each other.
+ * <p>
+ * The {@code <name>.requests} and {@code <name>.queries} counters give how many calls each lookup serves.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Counter requestsCounter;
+    private final Counter queriesCounter;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.requestsCounter = meterRegistry.counter(name + ".requests");
+        this.queriesCounter = meterRegistry.counter(name + ".queries");
+    }
+
+    public V execute(K key, Supplier<V> lookup) {
+        requestsCounter.increment();
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> sharedFlight = flights.putIfAbsent(key, flight);
+        if (sharedFlight != null) {
+            return join(sharedFlight);
+        }
+
+        queriesCounter.increment();
+        try {
+            V value = lookup.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // an error too, or the calls waiting for it would wait forever
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ecommerce.simple.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: a ring of buckets, each holding the timeouts that fall on its tick, possibly some rounds of
+ * the ring later. Scheduling a timeout is O(1), and each tick only looks at its own bucket, instead of polling every
+ * pending timeout. The timeouts of a tick expire together, in a single call of the expiry handler.
+ * <p>
+ * A timeout expires at the first tick at or after its deadline, so up to a tick late, and is never cancelled: the
+ * expiry handler skips the values that no longer need it.
+ */
+@Slf4j
+public class TimingWheel<T> implements AutoCloseable {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<Timeout<T>>> buckets;
+    private final Consumer<List<T>> expiryHandler;
+    private final long startNanos = System.nanoTime();
+    // scheduled from any thread, moved into the buckets by the ticker thread, the only one to touch them
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService ticker;
+    private long tick;
+
+    /**
+     * @param tickDuration  the precision of the expiries
+     * @param wheelSize     the number of buckets, rounded up to a power of two; a timeout further than a full turn
+     *                      of the wheel waits in its bucket for the rounds left
+     * @param expiryHandler called from the ticker thread with the values that expired on a tick
+     */
+    public TimingWheel(String name, Duration tickDuration, int wheelSize, Consumer<List<T>> expiryHandler) {
+        this.tickNanos = tickDuration.toNanos();
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.expiryHandler = expiryHandler;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name(name).daemon().factory());
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void schedule(T value, Instant deadline) {
+        long deadlineNanos = System.nanoTime() - startNanos + Duration.between(Instant.now(), deadline).toNanos();
+        scheduled.add(new Timeout<>(value, deadlineNanos));
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Runs the ticks due since the previous run, more than one when the expiry handler took longer than a tick.
+     */
+    private void advance() {
+        long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+        while (tick <= currentTick) {
+            try {
+                transferScheduled();
+                expire(buckets.get((int) (tick & mask)));
+            } catch (RuntimeException e) {
+                // an exception would cancel the ticker for good
+                log.error("[ advance ] tick: {}", tick, e);
+            }
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        for (Timeout<T> timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            // rounded up, so that no timeout expires before its deadline; a past one expires on the current tick
+            long deadlineTick = Math.max(Math.ceilDiv(timeout.deadlineNanos, tickNanos), tick);
+            timeout.rounds = (deadlineTick - tick) / buckets.size();
+            buckets.get((int) (deadlineTick & mask)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout<T>> bucket) {
+        List<T> expired = new ArrayList<>();
+        List<Timeout<T>> remaining = new ArrayList<>();
+        for (Timeout<T> timeout : bucket) {
+            if (timeout.rounds == 0) {
+                expired.add(timeout.value);
+            } else {
+                timeout.rounds--;
+                remaining.add(timeout);
+            }
+        }
+        bucket.clear();
+        bucket.addAll(remaining);
+
+        if (!expired.isEmpty()) {
+            log.trace("[ expire ] tick: {}, expired: {}", tick, expired.size());
+            expiryHandler.accept(expired);
+        }
+    }
+
+    private static class Timeout<T> {
+        private final T value;
+        private final long deadlineNanos;
+        private long rounds;
+
+        private Timeout(T value, long deadlineNanos) {
+            this.value = value;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -1,25 +1,34 @@
+CREATE SEQUENCE IF NOT EXISTS "order_seq" START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS "product_seq" START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS "order_product_seq" START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS "order" (
-  "id" INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "id" INTEGER PRIMARY KEY DEFAULT nextval('order_seq'),
   "description" varchar(255) NOT NULL,
   "total_amount" double precision,
   "created_on" timestamp NOT NULL DEFAULT now(),
-  "last_updated_on" timestamp NOT NULL DEFAULT now()
+  "last_updated_on" timestamp NOT NULL DEFAULT now(),
+  "version" integer NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS "product" (
-  "id" INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "id" INTEGER PRIMARY KEY DEFAULT nextval('product_seq'),
   "name" varchar(255) UNIQUE NOT NULL,
   "description" varchar(255),
   "quantity" integer NOT NULL DEFAULT 0,
   "price" double precision NOT NULL,
+  "stock_shards" integer,
   "created_on" timestamp NOT NULL DEFAULT now(),
-  "last_updated_on" timestamp NOT NULL DEFAULT now()
+  "last_updated_on" timestamp NOT NULL DEFAULT now(),
+  "version" integer NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS "order_product" (
-  "id" INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "id" INTEGER PRIMARY KEY DEFAULT nextval('order_product_seq'),
   "order_id" integer,
   "product_id" integer,
+  "quantity" integer NOT NULL DEFAULT 1 CHECK ("quantity" > 0),
+  "reserved_until" timestamp,
   UNIQUE ("order_id", "product_id"),
   CONSTRAINT "fk_order"
       FOREIGN KEY("order_id")
@@ -28,3 +37,57 @@ CREATE TABLE IF NOT EXISTS "order_product" (
       FOREIGN KEY("product_id")
           REFERENCES "product" ("id")
 );
+
+-- databases created before holds existed: adds their column to the table
+ALTER TABLE "order_product" ADD COLUMN IF NOT EXISTS "reserved_until" timestamp;
+CREATE INDEX IF NOT EXISTS "order_product_reserved_until" ON "order_product" ("reserved_until") WHERE "reserved_until" IS NOT NULL;
+
+-- databases created before order items had a quantity: their order items are of one unit
+ALTER TABLE "order_product" ADD COLUMN IF NOT EXISTS "quantity" integer NOT NULL DEFAULT 1 CHECK ("quantity" > 0);
+
+-- databases created before split stocks existed: adds their column to the table
+ALTER TABLE "product" ADD COLUMN IF NOT EXISTS "stock_shards" integer;
+
+-- databases created before optimistic locking: adds the version columns to the tables
+ALTER TABLE "order" ADD COLUMN IF NOT EXISTS "version" integer NOT NULL DEFAULT 0;
+ALTER TABLE "product" ADD COLUMN IF NOT EXISTS "version" integer NOT NULL DEFAULT 0;
+
+-- the stock of the products with stock_shards, split between counters that concurrent orders lock separately
+CREATE TABLE IF NOT EXISTS "product_stock_shard" (
+  "product_id" integer NOT NULL,
+  "shard" integer NOT NULL,
+  "quantity" integer NOT NULL DEFAULT 0 CHECK ("quantity" >= 0),
+  PRIMARY KEY ("product_id", "shard"),
+  CONSTRAINT "fk_product"
+      FOREIGN KEY("product_id")
+          REFERENCES "product" ("id")
+          ON DELETE CASCADE
+);
+
+-- the amounts added to the order totals and not folded into them yet, each locking its order against deletion
+CREATE TABLE IF NOT EXISTS "order_total_delta" (
+  "id" bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "order_id" integer NOT NULL,
+  "amount" double precision NOT NULL,
+  CONSTRAINT "fk_order"
+      FOREIGN KEY("order_id")
+          REFERENCES "order" ("id")
+          ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS "order_total_delta_order_id" ON "order_total_delta" ("order_id");
+
+CREATE TABLE IF NOT EXISTS "idempotency_key" (
+  "id" varchar(64) PRIMARY KEY,
+  "request_hash" varchar(64) NOT NULL,
+  "response" text NOT NULL,
+  "created_on" timestamp NOT NULL DEFAULT now(),
+  "expires_on" timestamp NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS "idempotency_key_expires_on" ON "idempotency_key" ("expires_on");
+
+-- databases created with identity columns: moves the sequences past the ids already in use
+SELECT setval('order_seq', (SELECT max("id") FROM "order")) WHERE (SELECT max("id") FROM "order") > (SELECT last_value FROM "order_seq");
+SELECT setval('product_seq', (SELECT max("id") FROM "product")) WHERE (SELECT max("id") FROM "product") > (SELECT last_value FROM "product_seq");
+SELECT setval('order_product_seq', (SELECT max("id") FROM "order_product")) WHERE (SELECT max("id") FROM "order_product") > (SELECT last_value FROM "order_product_seq");
@@ -112,6 +112,7 @@ class OrderControllerTest {
         var order = Order.builder()
                 .description("sales 2")
                 .totalAmount(1000.0)
+                .version(orderVersion(1))
                 .build();
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -145,6 +146,7 @@ class OrderControllerTest {
                 .id(2)
                 .description("sales 2")
                 .totalAmount(1000.0)
+                .version(orderVersion(1))
                 .build();
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/api/orders/1")
@@ -295,8 +297,10 @@ class OrderControllerTest {
     @Test
     @org.junit.jupiter.api.Order(13)
     public void updateOrderWithIdNotFound() throws Exception {
+        // a version is given, the order is missing rather than changed since
         var order = Order.builder()
                 .description("sales 2")
+                .version(0)
                 .build();
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -405,7 +409,7 @@ class OrderControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(orderService.getOrders())
+        given(orderService.getOrders(null, null))
                 .willAnswer(invocation -> {
                     throw new RuntimeException("Generic error.");
                 });
@@ -435,7 +439,7 @@ class OrderControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(orderService.getOrders())
+        given(orderService.getOrders(null, null))
                 .willAnswer(invocation -> {
                     throw new ConnectException("Connection error.");
                 });
@@ -450,4 +454,152 @@ class OrderControllerTest {
                 .andExpect(jsonPath("$.message").value("Service Unavailable"))
                 .andExpect(jsonPath("$.detailedMessage").value("Connection error."));
     }
-}
\ No newline at end of file
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(20)
+    public void createOrderWithIdempotencyKey() throws Exception {
+        var order = Order.builder()
+                .description("sales idempotent")
+                .build();
+
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/orders")
+                        .header("Idempotency-Key", "order-key-1")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer orderId = new ObjectMapper().readTree(response).get("id").asInt();
+
+        // the retry gets the same order back, instead of creating another one
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/orders")
+                        .header("Idempotency-Key", "order-key-1")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(orderId))
+                .andExpect(jsonPath("$.description").value("sales idempotent"))
+                .andExpect(jsonPath("$.totalAmount").value(0));
+    }
+
+    /**
+     * 404
+     */
+    @Test
+    @org.junit.jupiter.api.Order(21)
+    public void confirmOrderNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/orders/1000/confirm")
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.httpCode").value(404))
+                .andExpect(jsonPath("$.message").value("Not Found"))
+                .andExpect(jsonPath("$.detailedMessage").value("Order of id 1000 not found."));
+    }
+
+    /**
+     * 409
+     */
+    @Test
+    @org.junit.jupiter.api.Order(22)
+    public void updateOrderFromAnOlderVersion() throws Exception {
+        Integer orderId = createOrder("sales 10");
+        Integer version = orderVersion(orderId);
+
+        var order = Order.builder()
+                .description("sales 11")
+                .totalAmount(100.0)
+                .version(version)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/orders/{id}", orderId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(version + 1));
+
+        // still from the version read, which the first update replaced
+        order.setDescription("sales 12");
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/orders/{id}", orderId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andDo(print())
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.httpCode").value(409))
+                .andExpect(jsonPath("$.message").value("Conflict"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/orders/{id}", orderId)
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description").value("sales 11"));
+    }
+
+    /**
+     * 428
+     */
+    @Test
+    @org.junit.jupiter.api.Order(23)
+    public void updateOrderWithoutVersion() throws Exception {
+        Integer orderId = createOrder("sales 13");
+
+        var order = Order.builder()
+                .description("sales 13")
+                .totalAmount(0.0)
+                .build();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/orders/{id}", orderId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andDo(print())
+                .andExpect(status().isPreconditionRequired())
+                .andExpect(jsonPath("$.httpCode").value(428))
+                .andExpect(jsonPath("$.message").value("Precondition Required"))
+                .andExpect(jsonPath("$.detailedMessage").value(String.format("Version of the order of id %d missing, the order must be read before being updated.", orderId)));
+    }
+
+    private Integer createOrder(String description) throws Exception {
+        var order = Order.builder()
+                .description(description)
+                .build();
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/orders")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(order)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return new ObjectMapper().readTree(response).get("id").asInt();
+    }
+
+    private Integer orderVersion(Integer id) throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/orders/{id}", id)
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").isNumber())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return new ObjectMapper().readTree(response).get("version").asInt();
+    }
+}
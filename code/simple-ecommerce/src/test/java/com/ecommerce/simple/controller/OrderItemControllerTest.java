@@ -1,6 +1,7 @@
 package com.ecommerce.simple.controller;
 
 import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.dto.OrderItemResponseDTO;
 import com.ecommerce.simple.dto.OrderResponseDTO;
 import com.ecommerce.simple.dto.ProductResponseDTO;
 import com.ecommerce.simple.exception.CustomExceptionHandler;
@@ -19,6 +20,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -27,11 +29,17 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
 import java.net.ConnectException;
+import java.util.List;
 
 import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -175,7 +183,7 @@ class OrderItemControllerTest {
     }
 
     /**
-     * 400
+     * 200
      */
     @Test
     @org.junit.jupiter.api.Order(6)
@@ -194,17 +202,28 @@ class OrderItemControllerTest {
                         .accept("application/json")
                         .content(asJsonString(orderItem)));
 
-        // second time
+        // second time, adds to the order item
         mockMvc.perform(MockMvcRequestBuilders
                         .post("/api/order-items")
                         .contentType("application/json")
                         .accept("application/json")
                         .content(asJsonString(orderItem)))
                 .andDo(print())
-                .andExpect(status().isBadRequest())
-                .andExpect(jsonPath("$.httpCode").value(400))
-                .andExpect(jsonPath("$.message").value("Bad Request"))
-                .andExpect(jsonPath("$.detailedMessage").value(format("Order item already exists for order: '%d' and product: '%d'.", orderId, productId)));
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.productId").value(productId))
+                .andExpect(jsonPath("$.quantity").value(2));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(8));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/orders/%d", orderId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(1000.0));
     }
 
     /**
@@ -485,7 +504,7 @@ class OrderItemControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(orderService.getOrderItems())
+        given(orderService.getOrderItems(null, null))
                 .willAnswer(invocation -> {
                     throw new RuntimeException("Generic error.");
                 });
@@ -515,7 +534,7 @@ class OrderItemControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(orderService.getOrderItems())
+        given(orderService.getOrderItems(null, null))
                 .willAnswer(invocation -> {
                     throw new ConnectException("Connection error.");
                 });
@@ -531,6 +550,503 @@ class OrderItemControllerTest {
                 .andExpect(jsonPath("$.detailedMessage").value("Connection error."));
     }
 
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(22)
+    public void createOrderItemsInBulk() throws Exception {
+        Integer orderId = createOrder("sales bulk");
+        Integer productId = createProduct("bulk tv", 10);
+        Integer productWithNoQuantityId = createProduct("bulk tv 2", 0);
+
+        var orderItems = List.of(
+                OrderItemRequestDTO.builder().orderId(orderId).productId(productId).build(),
+                OrderItemRequestDTO.builder().orderId(orderId).productId(productWithNoQuantityId).build(),
+                OrderItemRequestDTO.builder().orderId(orderId).productId(productId).build(),
+                OrderItemRequestDTO.builder().orderId(orderId).productId(100).build(),
+                OrderItemRequestDTO.builder().productId(productId).build());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items/bulk")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItems)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].line").value(0))
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[0].orderItem.orderId").value(orderId))
+                .andExpect(jsonPath("$[0].orderItem.productId").value(productId))
+                .andExpect(jsonPath("$[0].orderItem.productName").value("bulk tv"))
+                .andExpect(jsonPath("$[0].orderItem.productPrice").value(500.0))
+                .andExpect(jsonPath("$[0].orderItem.quantity").value(2))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].error.httpCode").value(400))
+                .andExpect(jsonPath("$[1].error.detailedMessage").value(format("There is no left over products, quantity: %d", 0)))
+                .andExpect(jsonPath("$[2].success").value(true))
+                .andExpect(jsonPath("$[2].orderItem.quantity").value(2))
+                .andExpect(jsonPath("$[3].success").value(false))
+                .andExpect(jsonPath("$[3].error.httpCode").value(404))
+                .andExpect(jsonPath("$[3].error.detailedMessage").value("Product of id 100 not found."))
+                .andExpect(jsonPath("$[4].success").value(false))
+                .andExpect(jsonPath("$[4].error.httpCode").value(400))
+                .andExpect(jsonPath("$[4].error.detailedMessage").value("[orderId is mandatory]"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(8));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/orders/%d", orderId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(1000.0));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(23)
+    public void exportAllOrderItems() throws Exception {
+        Integer orderId = createOrder("sales export");
+        Integer productId = createProduct("exported tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/order-items")
+                .contentType("application/json")
+                .accept("application/json")
+                .content(asJsonString(orderItem)));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/order-items")
+                        .param("stream", "true")
+                        .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<OrderItemResponseDTO> orderItems = response.lines()
+                .map(line -> new Gson().fromJson(line, OrderItemResponseDTO.class))
+                .toList();
+        OrderItemResponseDTO lastOrderItem = orderItems.get(orderItems.size() - 1);
+        assertEquals(orderId, lastOrderItem.getOrderId());
+        assertEquals(productId, lastOrderItem.getProductId());
+        assertEquals("exported tv", lastOrderItem.getProductName());
+        assertEquals(500.0, lastOrderItem.getProductPrice());
+    }
+
+    /**
+     * 200, 422
+     */
+    @Test
+    @org.junit.jupiter.api.Order(24)
+    public void createOrderItemWithIdempotencyKey() throws Exception {
+        Integer orderId = createOrder("sales idempotent");
+        Integer productId = createProduct("idempotent tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .build();
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .header("Idempotency-Key", "order-item-key-1")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer orderItemId = new Gson().fromJson(response, OrderItemResponseDTO.class).getId();
+
+        // the retry gets the same order item back, instead of the duplicate error
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .header("Idempotency-Key", "order-item-key-1")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(orderItemId))
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.productId").value(productId))
+                .andExpect(jsonPath("$.productName").value("idempotent tv"))
+                .andExpect(jsonPath("$.productPrice").value(500.0));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(9));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/orders/%d", orderId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(500.0));
+
+        var anotherOrderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(createProduct("idempotent tv 2", 10))
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .header("Idempotency-Key", "order-item-key-1")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(anotherOrderItem)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.httpCode").value(422))
+                .andExpect(jsonPath("$.message").value("Unprocessable Entity"))
+                .andExpect(jsonPath("$.detailedMessage").value("Idempotency key 'order-item-key-1' was already used with another request."));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(25)
+    public void createOrderItemAsHoldThatExpires() throws Exception {
+        Integer orderId = createOrder("sales hold expired");
+        Integer productId = createProduct("held tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .hold(true)
+                .build();
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer orderItemId = new Gson().fromJson(response, OrderItemResponseDTO.class).getId();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(9));
+
+        // the hold expires after the reservation.ttl of the test properties
+        awaitProductQuantity(productId, 10);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/order-items/%d", orderItemId))
+                        .accept("application/json"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/orders/%d", orderId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(0.0));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(26)
+    public void createOrderItemAsHoldThenConfirmOrder() throws Exception {
+        Integer orderId = createOrder("sales hold confirmed");
+        Integer productId = createProduct("confirmed tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .hold(true)
+                .build();
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer orderItemId = new Gson().fromJson(response, OrderItemResponseDTO.class).getId();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(format("/api/orders/%d/confirm", orderId))
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(orderId))
+                .andExpect(jsonPath("$.totalAmount").value(500.0));
+
+        // past the reservation.ttl of the test properties, the sale is still there
+        Thread.sleep(3000);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/order-items/%d", orderItemId))
+                        .accept("application/json"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(9));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(27)
+    public void createOrderItemsOfSplitStockProduct() throws Exception {
+        var product = Product.builder()
+                .name("split tv")
+                .description("high definition television")
+                .quantity(3)
+                .price(500.0)
+                .stockShards(2)
+                .build();
+        String productResponse = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/products")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(3))
+                .andExpect(jsonPath("$.stockShards").value(2))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer productId = getProductId(productResponse);
+
+        // the counters hold 2 and 1, all of them are sold
+        Integer orderItemId = null;
+        for (int i = 0; i < 3; i++) {
+            var orderItem = OrderItemRequestDTO.builder()
+                    .orderId(createOrder("sales split " + i))
+                    .productId(productId)
+                    .build();
+            String response = mockMvc.perform(MockMvcRequestBuilders
+                            .post("/api/order-items")
+                            .contentType("application/json")
+                            .accept("application/json")
+                            .content(asJsonString(orderItem)))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.productName").value("split tv"))
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            orderItemId = new Gson().fromJson(response, OrderItemResponseDTO.class).getId();
+        }
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(createOrder("sales split left over"))
+                .productId(productId)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detailedMessage").value(format("There is no left over products, quantity: %d", 0)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete(format("/api/order-items/%d", orderItemId)))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(1));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @org.junit.jupiter.api.Order(28)
+    public void createOrderItemWithQuantity() throws Exception {
+        Integer orderId = createOrder("sales quantity");
+        Integer productId = createProduct("quantity tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(3)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(3));
+
+        orderItem.setQuantity(2);
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(5))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Integer orderItemId = new Gson().fromJson(response, OrderItemResponseDTO.class).getId();
+        checkingQuantityAndTotalAmount(productId, 5, orderId, 2500.0);
+
+        // more than the left over
+        orderItem.setQuantity(6);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detailedMessage").value(format("There is no left over products, quantity: %d", 5)));
+
+        orderItem.setQuantity(0);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detailedMessage").value("[quantity must be positive]"));
+
+        // the update replaces the quantity
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put(format("/api/order-items/%d", orderItemId))
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(OrderItemRequestDTO.builder().orderId(orderId).productId(productId).quantity(1).build())))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(orderItemId))
+                .andExpect(jsonPath("$.quantity").value(1));
+        checkingQuantityAndTotalAmount(productId, 9, orderId, 500.0);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete(format("/api/order-items/%d", orderItemId)))
+                .andExpect(status().isNoContent());
+        checkingQuantityAndTotalAmount(productId, 10, orderId, 0.0);
+    }
+
+    /**
+     * 400
+     */
+    @Test
+    @org.junit.jupiter.api.Order(29)
+    public void createOrderItemAsSaleOfHeldProduct() throws Exception {
+        Integer orderId = createOrder("sales held then sold");
+        Integer productId = createProduct("held then sold tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .hold(true)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        orderItem.setHold(false);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.httpCode").value(400))
+                .andExpect(jsonPath("$.message").value("Bad Request"))
+                .andExpect(jsonPath("$.detailedMessage").value(format("Order item already exists for order: '%d' and product: '%d' as a hold, a sale can not be added to it.", orderId, productId)));
+    }
+
+    /**
+     * 400
+     */
+    @Test
+    @org.junit.jupiter.api.Order(30)
+    public void createOrderItemAsHoldOfSoldProduct() throws Exception {
+        Integer orderId = createOrder("sales sold then held");
+        Integer productId = createProduct("sold then held tv", 10);
+
+        var orderItem = OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        orderItem.setHold(true);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/order-items")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(orderItem)))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.httpCode").value(400))
+                .andExpect(jsonPath("$.message").value("Bad Request"))
+                .andExpect(jsonPath("$.detailedMessage").value(format("Order item already exists for order: '%d' and product: '%d' as a sale, a hold can not be added to it.", orderId, productId)));
+        // the hold refused took nothing
+        checkingQuantityAndTotalAmount(productId, 9, orderId, 500.0);
+    }
+
+    private void checkingQuantityAndTotalAmount(Integer productId, int quantity, Integer orderId, double totalAmount) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/products/%d", productId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(quantity));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(format("/api/orders/%d", orderId))
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(totalAmount));
+    }
+
     private Integer createProduct(String name, int quantity) throws Exception {
         var product = Product.builder()
                 .name(name)
@@ -593,6 +1109,22 @@ class OrderItemControllerTest {
         return new Gson().fromJson(response, OrderResponseDTO.class).getId();
     }
 
+    private void awaitProductQuantity(Integer productId, int quantity) throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            String response = mockMvc.perform(MockMvcRequestBuilders
+                            .get(format("/api/products/%d", productId))
+                            .accept("application/json"))
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            if (new Gson().fromJson(response, ProductResponseDTO.class).getQuantity() == quantity) {
+                return;
+            }
+            Thread.sleep(200);
+        }
+        fail(format("Product %d never got back to quantity %d", productId, quantity));
+    }
+
     private void checkingProductLeftOver(Integer productId) throws Exception {
         mockMvc.perform(MockMvcRequestBuilders
                         .get(format("/api/products/%d", productId))
@@ -1,9 +1,11 @@
 package com.ecommerce.simple.controller;
 
+import com.ecommerce.simple.dto.ProductResponseDTO;
 import com.ecommerce.simple.exception.CustomExceptionHandler;
 import com.ecommerce.simple.model.Product;
 import com.ecommerce.simple.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -15,6 +17,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -23,10 +26,18 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
 import java.net.ConnectException;
+import java.util.List;
 
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -140,6 +151,7 @@ class ProductControllerTest {
                 .description("personal computer")
                 .quantity(5)
                 .price(1000.0)
+                .version(productVersion(1))
                 .build();
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -180,6 +192,7 @@ class ProductControllerTest {
                 .description("personal computer")
                 .quantity(5)
                 .price(1000.0)
+                .version(productVersion(1))
                 .build();
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/api/products/1")
@@ -410,11 +423,13 @@ class ProductControllerTest {
     @Test
     @Order(17)
     public void updateProductWithIdNotFound() throws Exception {
+        // a version is given, the product is missing rather than changed since
         var product = Product.builder()
                 .name("pc")
                 .description("personal computer")
                 .quantity(5)
                 .price(1000.0)
+                .version(0)
                 .build();
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -547,7 +562,7 @@ class ProductControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(productService.getProducts())
+        given(productService.getProducts(null, null))
                 .willAnswer(invocation -> {
                     throw new RuntimeException("Generic error.");
                 });
@@ -577,7 +592,7 @@ class ProductControllerTest {
                 .setControllerAdvice(new CustomExceptionHandler())
                 .build();
 
-        given(productService.getProducts())
+        given(productService.getProducts(null, null))
                 .willAnswer(invocation -> {
                     throw new ConnectException("Connection error.");
                 });
@@ -592,4 +607,222 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.message").value("Service Unavailable"))
                 .andExpect(jsonPath("$.detailedMessage").value("Connection error."));
     }
+
+    /**
+     * 200
+     */
+    @Test
+    @Order(25)
+    public void getAllProductsPaginated() throws Exception {
+        Integer firstId = createProduct("paged tv 1");
+        Integer secondId = createProduct("paged tv 2");
+        Integer thirdId = createProduct("paged tv 3");
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products")
+                        .param("after", String.valueOf(firstId - 1))
+                        .param("size", "2")
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("Next-Cursor", String.valueOf(secondId)))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(firstId))
+                .andExpect(jsonPath("$[1].id").value(secondId));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products")
+                        .param("after", String.valueOf(secondId))
+                        .param("size", "2")
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Next-Cursor"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(thirdId));
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @Order(26)
+    public void exportAllProducts() throws Exception {
+        Integer productId = createProduct("exported tv");
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products")
+                        .param("stream", "true")
+                        .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<ProductResponseDTO> products = response.lines()
+                .map(line -> new Gson().fromJson(line, ProductResponseDTO.class))
+                .toList();
+        assertFalse(products.isEmpty());
+        assertEquals(productId, products.get(products.size() - 1).getId());
+        assertEquals("exported tv", products.get(products.size() - 1).getName());
+    }
+
+    /**
+     * 200
+     */
+    @Test
+    @Order(27)
+    public void getCachedProductInvalidatedByUpdate() throws Exception {
+        Integer productId = createProduct("cached tv");
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/products/{id}", productId)
+                            .accept("application/json"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.description").value("high definition television"));
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/actuator/metrics/cache.gets")
+                        .param("tag", "cache:products", "result:hit"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(greaterThanOrEqualTo(1.0)));
+
+        var product = Product.builder()
+                .name("cached tv")
+                .description("ultra high definition television")
+                .quantity(10)
+                .price(500.0)
+                .version(productVersion(productId))
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/products/{id}", productId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products/{id}", productId)
+                        .accept("application/json"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description").value("ultra high definition television"));
+    }
+
+    /**
+     * 409
+     */
+    @Test
+    @Order(28)
+    public void updateProductFromAnOlderVersion() throws Exception {
+        Integer productId = createProduct("versioned tv");
+
+        Integer version = productVersion(productId);
+
+        var product = Product.builder()
+                .name("versioned tv")
+                .description("ultra high definition television")
+                .quantity(10)
+                .price(500.0)
+                .version(version)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/products/{id}", productId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(version + 1));
+
+        // still from the version read, which the first update replaced
+        product.setDescription("4k television");
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/products/{id}", productId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andDo(print())
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.httpCode").value(409))
+                .andExpect(jsonPath("$.message").value("Conflict"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products/{id}", productId)
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description").value("ultra high definition television"));
+    }
+
+    /**
+     * 428
+     */
+    @Test
+    @Order(29)
+    public void updateProductWithoutVersion() throws Exception {
+        Integer productId = createProduct("unversioned tv");
+
+        var product = Product.builder()
+                .name("unversioned tv")
+                .description("ultra high definition television")
+                .quantity(10)
+                .price(500.0)
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/products/{id}", productId)
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andDo(print())
+                .andExpect(status().isPreconditionRequired())
+                .andExpect(jsonPath("$.httpCode").value(428))
+                .andExpect(jsonPath("$.message").value("Precondition Required"))
+                .andExpect(jsonPath("$.detailedMessage").value(String.format("Version of the product of id %d missing, the product must be read before being updated.", productId)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products/{id}", productId)
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description").value("high definition television"));
+    }
+
+    private Integer productVersion(Integer id) throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products/{id}", id)
+                        .accept("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").isNumber())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return new Gson().fromJson(response, ProductResponseDTO.class).getVersion();
+    }
+
+    private Integer createProduct(String name) throws Exception {
+        var product = Product.builder()
+                .name(name)
+                .description("high definition television")
+                .quantity(10)
+                .price(500.0)
+                .build();
+        String response = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/products")
+                        .contentType("application/json")
+                        .accept("application/json")
+                        .content(asJsonString(product)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return new Gson().fromJson(response, ProductResponseDTO.class).getId();
+    }
 }
\ No newline at end of file
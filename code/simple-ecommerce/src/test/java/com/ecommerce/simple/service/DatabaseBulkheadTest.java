@@ -0,0 +1,94 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.exception.CustomExceptionHandler;
+import com.ecommerce.simple.exception.DatabaseBusyException;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Takes the only connection the bulkhead hands out, the pool of 3 keeping 2 for the work let past it, then checks that
+ * a request is turned away with a 503 once it waited its turn, instead of waiting for the pool.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.datasource.hikari.maximum-pool-size=3",
+        "database-bulkhead.reserved-connections=2",
+        // the connections taken at once while the application starts wait for each other rather than fail it
+        "database-bulkhead.max-queued=10",
+        "database-bulkhead.max-wait=200ms"})
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class DatabaseBulkheadTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DatabaseBulkhead databaseBulkhead;
+
+    @Test
+    public void requestBeyondTheBulkheadIsServiceUnavailable() throws Exception {
+        try (Connection ignored = dataSource.getConnection()) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/api/products/{id}", 1)
+                            .accept("application/json"))
+                    .andDo(print())
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.httpCode").value(503))
+                    .andExpect(jsonPath("$.message").value("Service Unavailable"))
+                    .andExpect(jsonPath("$.detailedMessage").value("Database busy, no connection within 200 ms."));
+        }
+
+        // the permit is given back with the connection
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/products/{id}", 1)
+                        .accept("application/json"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void workLetPastTheBulkheadGetsAReservedConnection() throws Exception {
+        try (Connection ignored = dataSource.getConnection()) {
+            boolean valid = databaseBulkhead.unbounded(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    return connection.isValid(1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(valid);
+        }
+    }
+
+    @Test
+    public void transactionRejectedByTheBulkheadIsServiceUnavailable() {
+        CannotCreateTransactionException ex = new CannotCreateTransactionException("Could not open JPA EntityManager for transaction",
+                new DatabaseBusyException("Database busy, no connection within 200 ms."));
+
+        ResponseEntity<Object> responseEntity = new CustomExceptionHandler().handleCannotCreateTransactionException(ex);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, responseEntity.getStatusCode());
+    }
+}
@@ -0,0 +1,69 @@
+package com.ecommerce.simple.service;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Runs requests with an idempotency key against an embedded PostgreSQL, the retries being bounded in time so one left
+ * waiting for an execution that never completes fails instead of hanging.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class IdempotencyServiceTest {
+
+    private static final Duration RETRY_TIMEOUT = Duration.ofSeconds(5);
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    public void retryAfterAnErrorRunsTheRequestAgain() {
+        StackOverflowError error = new StackOverflowError();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertSame(error, assertThrows(StackOverflowError.class, () -> execute("failing-key", () -> {
+            executions.incrementAndGet();
+            throw error;
+        })));
+
+        assertSame(error, assertTimeoutPreemptively(RETRY_TIMEOUT, () -> assertThrows(StackOverflowError.class,
+                () -> execute("failing-key", () -> {
+                    executions.incrementAndGet();
+                    throw error;
+                }))));
+        assertEquals(2, executions.get());
+
+        assertEquals("created", assertTimeoutPreemptively(RETRY_TIMEOUT, () -> execute("failing-key", () -> "created")));
+    }
+
+    @Test
+    public void retryAfterAnExceptionRunsTheRequestAgain() {
+        IllegalStateException exception = new IllegalStateException("Database unavailable.");
+
+        assertSame(exception, assertThrows(IllegalStateException.class, () -> execute("rejected-key", () -> {
+            throw exception;
+        })));
+
+        assertEquals("created", assertTimeoutPreemptively(RETRY_TIMEOUT, () -> execute("rejected-key", () -> "created")));
+        // replayed from then on
+        assertEquals("created", execute("rejected-key", () -> "created again"));
+    }
+
+    private String execute(String idempotencyKey, Supplier<String> action) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/orders", "request", String.class, action);
+    }
+}
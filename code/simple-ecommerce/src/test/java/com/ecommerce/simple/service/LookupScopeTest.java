@@ -0,0 +1,92 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.exception.NotFoundException;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LookupScopeTest {
+
+    @Test
+    public void joinGivesTheResultsOfAllTheLookups() {
+        try (LookupScope scope = new LookupScope()) {
+            Supplier<String> product = scope.fork(() -> "product");
+            Supplier<Integer> order = scope.fork(() -> 1);
+            scope.join();
+
+            assertEquals("product", product.get());
+            assertEquals(1, order.get());
+        }
+    }
+
+    @RepeatedTest(10)
+    public void lookupForkedFirstIsThrownWhenSeveralFail() {
+        NotFoundException productNotFound = new NotFoundException("Product of id 1 not found.");
+        NotFoundException orderNotFound = new NotFoundException("Order of id 1 not found.");
+
+        try (LookupScope scope = new LookupScope()) {
+            scope.fork(() -> {
+                sleep(50);
+                throw productNotFound;
+            });
+            scope.fork(() -> {
+                throw orderNotFound;
+            });
+
+            assertSame(productNotFound, assertThrows(NotFoundException.class, scope::join));
+        }
+    }
+
+    @Test
+    public void failingLookupInterruptsTheLookupsForkedAfterIt() {
+        NotFoundException productNotFound = new NotFoundException("Product of id 1 not found.");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try (LookupScope scope = new LookupScope()) {
+            scope.fork(() -> {
+                // fails once the next lookup runs, rather than cancelling it before it starts
+                await(started);
+                throw productNotFound;
+            });
+            scope.fork(() -> {
+                started.countDown();
+                try {
+                    return never.await(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertSame(productNotFound, assertThrows(NotFoundException.class, scope::join));
+        }
+        assertTrue(interrupted.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
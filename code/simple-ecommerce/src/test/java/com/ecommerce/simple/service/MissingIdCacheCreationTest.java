@@ -0,0 +1,81 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.dto.OrderRequestDTO;
+import com.ecommerce.simple.dto.ProductRequestDTO;
+import com.ecommerce.simple.exception.NotFoundException;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Asks for the next id of each entity before it is given, then creates it through its service, against an embedded
+ * PostgreSQL: the id remembered as missing must be found once created.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class MissingIdCacheCreationTest {
+
+    // the order items take their ids straight from their sequence, the other entities from blocks of it
+    private static final int ORDER_ITEM_ID_INCREMENT = 50;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderItemService orderItemService;
+
+    @Test
+    public void createdProductIsFoundOnceMissing() {
+        Integer nextId = saveProduct("first tv") + 1;
+        assertThrows(NotFoundException.class, () -> productService.getProduct(nextId));
+
+        assertEquals(nextId, saveProduct("second tv"));
+        assertEquals(nextId, productService.getProduct(nextId).getId());
+    }
+
+    @Test
+    public void createdOrderIsFoundOnceMissing() {
+        Integer nextId = saveOrder("first order") + 1;
+        assertThrows(NotFoundException.class, () -> orderService.getOrder(nextId));
+
+        assertEquals(nextId, saveOrder("second order"));
+        assertEquals(nextId, orderService.getOrder(nextId).getId());
+    }
+
+    @Test
+    public void createdOrderItemIsFoundOnceMissing() {
+        Integer productId = saveProduct("third tv");
+        Integer nextId = saveOrderItem(saveOrder("third order"), productId) + ORDER_ITEM_ID_INCREMENT;
+        assertThrows(NotFoundException.class, () -> orderItemService.getOrderItem(nextId));
+
+        assertEquals(nextId, saveOrderItem(saveOrder("fourth order"), productId));
+        assertEquals(nextId, orderItemService.getOrderItem(nextId).getId());
+    }
+
+    private Integer saveProduct(String name) {
+        return productService.saveProduct(new ProductRequestDTO(name, "high definition television", 10, 500.0, null)).getId();
+    }
+
+    private Integer saveOrder(String description) {
+        return orderService.saveOrder(new OrderRequestDTO(description)).getId();
+    }
+
+    private Integer saveOrderItem(Integer orderId, Integer productId) {
+        return orderItemService.saveOrderItem(OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(1)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.configuration.MissingIdCacheProperties;
+import com.ecommerce.simple.model.Order;
+import com.ecommerce.simple.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MissingIdCacheTest {
+
+    private final MissingIdCache missingIdCache = new MissingIdCache(new SimpleMeterRegistry(), new MissingIdCacheProperties(Duration.ofMinutes(1), 100));
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Test
+    public void missingIdIsAnsweredWithoutQuery() {
+        assertTrue(missingIdCache.find(Product.class, 1, missing()).isEmpty());
+        assertTrue(missingIdCache.find(Product.class, 1, missing()).isEmpty());
+
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void foundIdIsAlwaysQueried() {
+        assertEquals(Optional.of("product"), missingIdCache.find(Product.class, 1, found()));
+        assertEquals(Optional.of("product"), missingIdCache.find(Product.class, 1, found()));
+
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void missingIdIsKeptPerEntity() {
+        missingIdCache.find(Product.class, 1, missing());
+        missingIdCache.find(Order.class, 1, missing());
+
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void createdIdIsQueriedAgain() {
+        missingIdCache.find(Product.class, 1, missing());
+        missingIdCache.created(Product.class, 1);
+
+        assertEquals(Optional.of("product"), missingIdCache.find(Product.class, 1, found()));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void missingIdIsNotRememberedWhenCreatedDuringTheLookup() {
+        missingIdCache.find(Product.class, 1, () -> {
+            // a product created meanwhile, its row could have been committed once the lookup read
+            missingIdCache.created(Product.class, 2);
+            return missing().get();
+        });
+        missingIdCache.find(Product.class, 1, missing());
+
+        assertEquals(2, queries.get());
+    }
+
+    private Supplier<Optional<String>> missing() {
+        return () -> {
+            queries.incrementAndGet();
+            return Optional.empty();
+        };
+    }
+
+    private Supplier<Optional<String>> found() {
+        return () -> {
+            queries.incrementAndGet();
+            return Optional.of("product");
+        };
+    }
+}
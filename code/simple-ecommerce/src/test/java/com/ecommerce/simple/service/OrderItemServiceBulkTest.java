@@ -0,0 +1,90 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.OrderItemBulkResponseDTO;
+import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.dto.OrderRequestDTO;
+import com.ecommerce.simple.dto.ProductRequestDTO;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Adds order items through the bulk path on top of existing ones, against an embedded PostgreSQL, the reservation
+ * ttl of the test properties being short enough to see the holds expire.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class OrderItemServiceBulkTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderItemService orderItemService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void holdAddedAgainInBulkIsExtendedAndReleasedOnceExpired() throws Exception {
+        Integer productId = productService.saveProduct(new ProductRequestDTO("held tv", "high definition television", 10, 500.0, null)).getId();
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("held order")).getId();
+
+        Integer orderItemId = orderItemService.saveOrderItem(hold(orderId, productId, 1)).getId();
+        Timestamp firstReservedUntil = reservedUntil(orderItemId);
+
+        Thread.sleep(100);
+        List<OrderItemBulkResponseDTO> responses = orderItemService.saveOrderItems(List.of(hold(orderId, productId, 2)));
+
+        assertTrue(responses.get(0).getSuccess());
+        assertEquals(orderItemId, responses.get(0).getOrderItem().getId());
+        assertEquals(3, responses.get(0).getOrderItem().getQuantity());
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT quantity FROM order_product WHERE id = ?", Integer.class, orderItemId));
+        assertTrue(reservedUntil(orderItemId).after(firstReservedUntil));
+        assertEquals(7, productQuantity(productId));
+
+        // released on its extended deadline, giving the whole quantity back
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (orderItemExists(orderItemId) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM order_product WHERE id = ?", Integer.class, orderItemId));
+        assertEquals(10, productQuantity(productId));
+        assertEquals(0.0, orderService.getOrder(orderId).getTotalAmount());
+    }
+
+    private static OrderItemRequestDTO hold(Integer orderId, Integer productId, Integer quantity) {
+        return OrderItemRequestDTO.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(quantity)
+                .hold(true)
+                .build();
+    }
+
+    private Timestamp reservedUntil(Integer orderItemId) {
+        return jdbcTemplate.queryForObject("SELECT reserved_until FROM order_product WHERE id = ?", Timestamp.class, orderItemId);
+    }
+
+    private boolean orderItemExists(Integer orderItemId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM order_product WHERE id = ?", Integer.class, orderItemId) > 0;
+    }
+
+    private Integer productQuantity(Integer productId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM product WHERE id = ?", Integer.class, productId);
+    }
+}
@@ -0,0 +1,176 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.OrderItemRequestDTO;
+import com.ecommerce.simple.exception.ConcurrentUpdateException;
+import com.ecommerce.simple.exception.DuplicateKeyValueException;
+import com.ecommerce.simple.exception.NoProductLeftOverException;
+import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.model.Order;
+import com.ecommerce.simple.model.OrderItem;
+import com.ecommerce.simple.model.Product;
+import com.ecommerce.simple.repository.OrderRepository;
+import com.ecommerce.simple.repository.ProductRepository;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Saves, updates and deletes order items from thousands of virtual threads at once, against an embedded PostgreSQL,
+ * then checks that the stock of every product and the total of every order still match the order items left.
+ */
+@Slf4j
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        // the schema of schema.sql, with its foreign keys and checks, rather than one generated from the entities
+        "spring.jpa.hibernate.ddl-auto=none",
+        // the deadlocks between concurrent order items are expected, detect them sooner than the default second
+        "zonky.test.database.postgres.server.properties.deadlock_timeout=50ms",
+        // every operation is let through to the database, the test is about their consistency rather than overload
+        "database-bulkhead.max-queued=" + OrderItemServiceConcurrencyTest.OPERATIONS,
+        "database-bulkhead.max-wait=1m"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class OrderItemServiceConcurrencyTest {
+
+    private static final int PRODUCTS = 5;
+    private static final int STOCK = 200;
+    private static final int ORDERS = 100;
+    private static final int INITIAL_ORDER_ITEMS = 200;
+    // read by the properties of the test, outside of its body
+    static final int OPERATIONS = 2000;
+
+    @Autowired
+    private OrderItemService orderItemService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void concurrentChangesKeepStockAndOrderTotalsConsistent() {
+        List<Integer> productIds = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            productIds.add(productRepository.save(Product.builder()
+                    .name("stress product " + i)
+                    .description("stress test")
+                    .quantity(STOCK)
+                    .price(10.0 * (i + 1))
+                    .build()).getId());
+        }
+        List<Integer> orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            orderIds.add(orderRepository.save(Order.builder()
+                    .description("stress order " + i)
+                    .totalAmount(0.0)
+                    .build()).getId());
+        }
+        List<Integer> orderItemIds = new ArrayList<>();
+        for (int i = 0; i < INITIAL_ORDER_ITEMS; i++) {
+            orderItemIds.add(orderItemService.saveOrderItem(OrderItemRequestDTO.builder()
+                    .orderId(orderIds.get(i % ORDERS))
+                    .productId(productIds.get(i / ORDERS % PRODUCTS))
+                    .build()).getId());
+        }
+
+        // drawn up front with a fixed seed, so every run applies the same operations
+        Random random = new Random(42);
+        List<Runnable> operations = new ArrayList<>(OPERATIONS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            Integer orderId = orderIds.get(random.nextInt(ORDERS));
+            Integer productId = productIds.get(random.nextInt(PRODUCTS));
+            Integer orderItemId = orderItemIds.get(random.nextInt(INITIAL_ORDER_ITEMS));
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                operations.add(() -> orderItemService.saveOrderItem(OrderItemRequestDTO.builder()
+                        .orderId(orderId)
+                        .productId(productId)
+                        .build()));
+            } else if (operation < 9) {
+                operations.add(() -> orderItemService.updateOrderItem(orderItemId, OrderItem.builder()
+                        .orderId(orderId)
+                        .productId(productId)
+                        .build()));
+            } else {
+                operations.add(() -> orderItemService.deleteOrderItem(orderItemId));
+            }
+        }
+
+        Map<String, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+        Queue<RuntimeException> unexpectedExceptions = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Runnable operation : operations) {
+                executor.submit(() -> {
+                    start.await();
+                    try {
+                        operation.run();
+                        count(outcomes, "succeeded");
+                    } catch (NotFoundException | DuplicateKeyValueException | NoProductLeftOverException |
+                             ConcurrentUpdateException | DataAccessException | TransactionException e) {
+                        // refused, or rolled back: the invariants must hold either way
+                        count(outcomes, e.getClass().getSimpleName());
+                    } catch (RuntimeException e) {
+                        unexpectedExceptions.add(e);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+        log.info("outcomes: {}", outcomes);
+
+        assertTrue(unexpectedExceptions.isEmpty(), () -> "unexpected exceptions: " + unexpectedExceptions);
+
+        jdbcTemplate.query("""
+                SELECT p.id, p.quantity, coalesce(sum(oi.quantity), 0) AS items
+                  FROM product p
+                  LEFT JOIN order_product oi ON oi.product_id = p.id
+                 GROUP BY p.id, p.quantity
+                """, row -> {
+            int quantity = row.getInt("quantity");
+            assertTrue(quantity >= 0, "product " + row.getInt("id") + " oversold");
+            assertEquals(STOCK - row.getInt("items"), quantity, "stock of product " + row.getInt("id"));
+        });
+        // the amounts not folded into the totals yet count as well, a fold moves them in a single transaction
+        jdbcTemplate.query("""
+                SELECT o.id,
+                       o.total_amount + coalesce((SELECT sum(d.amount) FROM order_total_delta d WHERE d.order_id = o.id), 0) AS total_amount,
+                       coalesce(sum(p.price * oi.quantity), 0) AS items_amount
+                  FROM "order" o
+                  LEFT JOIN order_product oi ON oi.order_id = o.id
+                  LEFT JOIN product p ON p.id = oi.product_id
+                 GROUP BY o.id, o.total_amount
+                """, row -> {
+            assertEquals(row.getDouble("items_amount"), row.getDouble("total_amount"), 0.001, "total amount of order " + row.getInt("id"));
+        });
+    }
+
+    private static void count(Map<String, AtomicInteger> outcomes, String outcome) {
+        outcomes.computeIfAbsent(outcome, key -> new AtomicInteger()).incrementAndGet();
+    }
+}
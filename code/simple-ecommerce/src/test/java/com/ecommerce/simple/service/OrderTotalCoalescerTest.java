@@ -0,0 +1,156 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.OrderRequestDTO;
+import com.ecommerce.simple.dto.OrderResponseDTO;
+import com.ecommerce.simple.exception.NotFoundException;
+import com.ecommerce.simple.model.Order;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Adds amounts to order totals against an embedded PostgreSQL, folding them on demand: the window of the test
+ * properties is too long for the scheduled folds to run meanwhile.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "order-total.coalescing-window=1h"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class OrderTotalCoalescerTest {
+
+    private static final int AMOUNTS = 50;
+
+    @Autowired
+    private OrderTotalCoalescer orderTotalCoalescer;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void concurrentAmountsAreFoldedIntoTheTotalByOneUpdate() throws Exception {
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("coalesced order")).getId();
+
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < AMOUNTS; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    transactionTemplate.executeWithoutResult(status -> orderTotalCoalescer.add(orderId, 10.0));
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+
+        // committed, not folded yet: the order row is left alone, its reads add up the amounts
+        assertEquals(0.0, totalAmountColumn(orderId));
+        assertEquals(AMOUNTS * 10.0, orderService.getOrder(orderId).getTotalAmount());
+
+        double updates = meterRegistry.counter("order.total.updates").count();
+        double amounts = meterRegistry.counter("order.total.amounts").count();
+        assertEquals(AMOUNTS, orderTotalCoalescer.fold());
+        assertEquals(1.0, meterRegistry.counter("order.total.updates").count() - updates);
+        assertEquals(AMOUNTS, meterRegistry.counter("order.total.amounts").count() - amounts);
+
+        assertEquals(AMOUNTS * 10.0, totalAmountColumn(orderId));
+        assertEquals(AMOUNTS * 10.0, orderService.getOrder(orderId).getTotalAmount());
+        assertEquals(0, orderTotalCoalescer.fold());
+    }
+
+    @Test
+    public void rolledBackAmountIsNeverApplied() {
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("rolled back order")).getId();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            orderTotalCoalescer.add(orderId, 10.0);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0.0, orderService.getOrder(orderId).getTotalAmount());
+        assertEquals(0, orderTotalCoalescer.fold());
+        assertEquals(0.0, totalAmountColumn(orderId));
+    }
+
+    @Test
+    public void updateFromAVersionReadBeforeAnAmountIsRefused() {
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("versioned order")).getId();
+        Integer version = orderService.getOrder(orderId).getVersion();
+
+        transactionTemplate.executeWithoutResult(status -> orderTotalCoalescer.add(orderId, 10.0));
+        OrderResponseDTO orderRead = orderService.getOrder(orderId);
+        assertEquals(10.0, orderRead.getTotalAmount());
+        assertEquals(version + 1, orderRead.getVersion());
+
+        // read before the amount, the update would replace the total without it
+        Order staleOrder = Order.builder()
+                .description("versioned order")
+                .totalAmount(0.0)
+                .version(version)
+                .build();
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> orderService.updateOrder(orderId, staleOrder));
+        assertEquals(10.0, orderService.getOrder(orderId).getTotalAmount());
+
+        // folded, the total and the version read are the same
+        assertEquals(1, orderTotalCoalescer.fold());
+        assertEquals(orderRead, orderService.getOrder(orderId));
+
+        Order order = Order.builder()
+                .description("versioned order")
+                .totalAmount(5.0)
+                .version(orderRead.getVersion())
+                .build();
+        assertEquals(orderRead.getVersion() + 1, orderService.updateOrder(orderId, order).getVersion());
+        assertEquals(5.0, orderService.getOrder(orderId).getTotalAmount());
+    }
+
+    @Test
+    public void updateFromTheVersionReadReplacesTheAmountsNotFolded() {
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("replaced order")).getId();
+        transactionTemplate.executeWithoutResult(status -> orderTotalCoalescer.add(orderId, 10.0));
+        OrderResponseDTO orderRead = orderService.getOrder(orderId);
+
+        Order order = Order.builder()
+                .description("replaced order")
+                .totalAmount(5.0)
+                .version(orderRead.getVersion())
+                .build();
+        OrderResponseDTO orderUpdated = orderService.updateOrder(orderId, order);
+
+        assertEquals(orderRead.getVersion() + 1, orderUpdated.getVersion());
+        assertEquals(orderUpdated, orderService.getOrder(orderId));
+        assertEquals(0, orderTotalCoalescer.fold());
+        assertEquals(5.0, totalAmountColumn(orderId));
+    }
+
+    @Test
+    public void amountOfMissingOrderIsRefused() {
+        assertThrows(NotFoundException.class, () -> transactionTemplate.executeWithoutResult(status -> orderTotalCoalescer.add(-1, 10.0)));
+    }
+
+    private Double totalAmountColumn(Integer orderId) {
+        return jdbcTemplate.queryForObject("SELECT total_amount FROM \"order\" WHERE id = ?", Double.class, orderId);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.OrderRequestDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * With a window of 0, the amounts update the order totals in the transaction adding them.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "order-total.coalescing-window=0"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class OrderTotalCoalescerWithoutWindowTest {
+
+    @Autowired
+    private OrderTotalCoalescer orderTotalCoalescer;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void amountUpdatesTheTotalInItsTransaction() {
+        Integer orderId = orderService.saveOrder(new OrderRequestDTO("updated in place order")).getId();
+        double updates = meterRegistry.counter("order.total.updates").count();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            orderTotalCoalescer.add(orderId, 10.0);
+            // already in the row, before the commit
+            assertEquals(10.0, totalAmountColumn(orderId));
+        });
+
+        assertEquals(10.0, totalAmountColumn(orderId));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM order_total_delta", Integer.class));
+        assertEquals(0, orderTotalCoalescer.fold());
+        assertEquals(updates, meterRegistry.counter("order.total.updates").count());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            orderTotalCoalescer.add(orderId, 5.0);
+            status.setRollbackOnly();
+        });
+        assertEquals(10.0, totalAmountColumn(orderId));
+    }
+
+    private Double totalAmountColumn(Integer orderId) {
+        return jdbcTemplate.queryForObject("SELECT total_amount FROM \"order\" WHERE id = ?", Double.class, orderId);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.dto.ProductRequestDTO;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reserves the stock of a split product against an embedded PostgreSQL: its counters together must behave as the
+ * single quantity of a product kept in its row.
+ */
+@SpringBootTest(properties = {
+        "logging.level.com.ecommerce.simple=info",
+        "spring.jpa.hibernate.ddl-auto=none"})
+@AutoConfigureEmbeddedDatabase(provider = ZONKY)
+class ProductStockServiceTest {
+
+    @Autowired
+    private ProductStockService productStockService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void orderLargerThanEveryCounterIsDrawnFromSeveral() {
+        // 10 split into 3, 3, 2 and 2
+        Integer productId = productService.saveProduct(new ProductRequestDTO("split tv", "high definition television", 10, 500.0, 4)).getId();
+        assertEquals(List.of(3, 3, 2, 2), counters(productId));
+
+        assertTrue(productStockService.reserve(productId, 5).isPresent());
+        assertEquals(5, counters(productId).stream().mapToInt(Integer::intValue).sum());
+
+        assertFalse(productStockService.reserveSharded(productId, 6));
+        assertEquals(5, counters(productId).stream().mapToInt(Integer::intValue).sum());
+
+        assertTrue(productStockService.reserveSharded(productId, 5));
+        assertEquals(List.of(0, 0, 0, 0), counters(productId));
+        assertTrue(productStockService.reserve(productId, 1).isEmpty());
+    }
+
+    private List<Integer> counters(Integer productId) {
+        return jdbcTemplate.queryForList("SELECT quantity FROM product_stock_shard WHERE product_id = ? ORDER BY shard", Integer.class, productId);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ecommerce.simple.service;
+
+import com.ecommerce.simple.exception.NotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Holds the lookup until every other call is waiting for it, so all of them are known to share it.
+ */
+class SingleFlightTest {
+
+    private static final int CALLS = 20;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight<Integer, Object> singleFlight = new SingleFlight<>("product.lookup", meterRegistry);
+
+    @Test
+    public void concurrentCallsShareOneLookup() throws Exception {
+        Object product = new Object();
+        AtomicInteger queries = new AtomicInteger();
+
+        Queue<Object> results = executeConcurrently(() -> {
+            queries.incrementAndGet();
+            return product;
+        });
+
+        assertEquals(1, queries.get());
+        assertEquals(CALLS, results.size());
+        results.forEach(result -> assertSame(product, result));
+        assertEquals(CALLS, meterRegistry.counter("product.lookup.requests").count());
+        assertEquals(1, meterRegistry.counter("product.lookup.queries").count());
+    }
+
+    @Test
+    public void concurrentCallsShareTheExceptionOfOneLookup() throws Exception {
+        NotFoundException notFound = new NotFoundException("Product of id 1 not found.");
+        AtomicInteger queries = new AtomicInteger();
+
+        Queue<Object> results = executeConcurrently(() -> {
+            queries.incrementAndGet();
+            throw notFound;
+        });
+
+        assertEquals(1, queries.get());
+        assertEquals(CALLS, results.size());
+        results.forEach(result -> assertSame(notFound, result));
+        assertEquals(CALLS, meterRegistry.counter("product.lookup.requests").count());
+        assertEquals(1, meterRegistry.counter("product.lookup.queries").count());
+    }
+
+    @Test
+    public void concurrentCallsShareTheErrorOfOneLookup() throws Exception {
+        StackOverflowError error = new StackOverflowError();
+
+        Queue<Object> results = executeConcurrently(() -> {
+            throw error;
+        });
+
+        assertEquals(CALLS, results.size());
+        results.forEach(result -> assertSame(error, result));
+
+        // nothing is left waiting behind it
+        assertEquals(2, singleFlight.execute(1, () -> 2));
+    }
+
+    @Test
+    public void nextCallRunsTheLookupAgain() {
+        AtomicInteger queries = new AtomicInteger();
+
+        singleFlight.execute(1, queries::incrementAndGet);
+        singleFlight.execute(1, queries::incrementAndGet);
+
+        assertEquals(2, queries.get());
+    }
+
+    /**
+     * @return the result, or the exception, of every call
+     */
+    private Queue<Object> executeConcurrently(Supplier<Object> lookup) throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Queue<Object> results = new ConcurrentLinkedQueue<>();
+        Runnable call = () -> {
+            try {
+                results.add(singleFlight.execute(1, () -> {
+                    entered.countDown();
+                    await(release);
+                    return lookup.get();
+                }));
+            } catch (RuntimeException | Error e) {
+                results.add(e);
+            }
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().start(call));
+        entered.await();
+        for (int i = 1; i < CALLS; i++) {
+            threads.add(Thread.ofPlatform().start(call));
+        }
+
+        // the lookup is held until every other call waits for it
+        for (Thread thread : threads.subList(1, CALLS)) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}